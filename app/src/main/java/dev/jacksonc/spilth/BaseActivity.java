@@ -3,7 +3,6 @@ package dev.jacksonc.spilth;
 import android.app.ActivityOptions;
 import android.content.Intent;
 import android.os.Bundle;
-import android.provider.SearchRecentSuggestions;
 import android.view.ContextMenu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -18,6 +17,7 @@ import com.google.android.material.snackbar.Snackbar;
 
 import java.util.Objects;
 
+import dev.jacksonc.spilth.data.SearchHistory;
 import dev.jacksonc.spilth.data.TopPicks;
 import dev.jacksonc.spilth.data.Wishlist;
 
@@ -119,8 +119,7 @@ public abstract class BaseActivity extends AppCompatActivity implements PopupMen
     }
 
     private void resetSuggestions() {
-        SearchRecentSuggestions suggestions = new SearchRecentSuggestions(this, SearchProvider.AUTHORITY, SearchProvider.MODE);
-        suggestions.clearHistory();
+        SearchHistory.clear();
 
         View context = findViewById(R.id.settings_button);
         Snackbar snackbar = Snackbar.make(context, R.string.reset_suggestions_snackbar, Snackbar.LENGTH_SHORT);
@@ -7,6 +7,8 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.core.widget.NestedScrollView;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -14,9 +16,12 @@ import androidx.viewpager.widget.ViewPager;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.tabs.TabLayout;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import dev.jacksonc.spilth.adaptors.ItemAdaptor;
@@ -24,6 +29,7 @@ import dev.jacksonc.spilth.adaptors.TagAdaptor;
 import dev.jacksonc.spilth.adaptors.ViewPagerAdaptor;
 import dev.jacksonc.spilth.data.Category;
 import dev.jacksonc.spilth.data.Item;
+import dev.jacksonc.spilth.data.ItemSource;
 import dev.jacksonc.spilth.data.TopPicks;
 import dev.jacksonc.spilth.data.Wishlist;
 
@@ -71,8 +77,40 @@ public class DetailsActivity extends BaseActivity {
 
         mViewPager.setTransitionName(itemId);
 
+        itemDesc = findViewById(R.id.detailsItemDesc);
+
+        // Read the item's fields off the main thread, as they may be in storage, then show them
+        Futures.addCallback(ItemSource.of(Collections.singletonList(item)).loadPage(0, Details::new),
+                new FutureCallback<List<Details>>() {
+                    @Override
+                    public void onSuccess(List<Details> page) {
+                        // The item may have been removed by an update
+                        if (!page.isEmpty()) {
+                            showDetails(page.get(0));
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull Throwable t) {
+                        t.printStackTrace();
+                    }
+                }, ContextCompat.getMainExecutor(this));
+
+        // Add scroll listener
+        scrollView = findViewById(R.id.details_scroll_layout);
+        scrollView.getViewTreeObserver().addOnScrollChangedListener(this::onScrollChanged);
+
+        // Set FAB icon
+        favouriteButton = findViewById(R.id.details_favourite_button);
+        setFavouriteImage();
+    }
+
+    /**
+     * Shows the fields read for the item
+     */
+    private void showDetails(Details details) {
         //Initializing the ViewPagerAdaptor
-        ViewPagerAdaptor mViewPagerAdaptor = new ViewPagerAdaptor(new ArrayList<>(item.getImages()));
+        ViewPagerAdaptor mViewPagerAdaptor = new ViewPagerAdaptor(new ArrayList<>(details.images));
 
         //Adding the Adaptor to the ViewPager
         mViewPager.setAdapter(mViewPagerAdaptor);
@@ -80,50 +118,23 @@ public class DetailsActivity extends BaseActivity {
         // Set text values
         TextView itemName = findViewById(R.id.detailsItemName);
         TextView itemPrice = findViewById(R.id.detailsItemPrice);
-        itemDesc = findViewById(R.id.detailsItemDesc);
-        itemName.setText(item.getTitle());
-        itemPrice.setText(String.format("$%s", item.getPrice()));
-        itemDesc.setText(item.getDescription());
+        itemName.setText(details.title);
+        itemPrice.setText(details.price);
+        itemDesc.setText(details.description);
 
         // Set recycler views
         RecyclerView itemTags = findViewById(R.id.rvTags);
         RecyclerView suggestItems = findViewById(R.id.suggestedItems);
 
         // Set tags to open category
-        List<Category> tags = new ArrayList<>(item.getCategories());
-        TagAdaptor tag_adaptor = new TagAdaptor(tags, this);
+        TagAdaptor tag_adaptor = new TagAdaptor(details.categories, this);
         itemTags.setAdapter(tag_adaptor);
         itemTags.setLayoutManager(new GridLayoutManager(this, 2));
 
-        // Get first category from item
-        Collection<Category> itemCategories = item.getCategories();
-        Category suggestCategory = itemCategories.iterator().next();
-
-        // Get all items from category
-        List<Item> items = new ArrayList<>(suggestCategory.getItems());
-
-        // Select first 2 from category
-        List<Item> item_preview = new ArrayList<>();
-        int i = 0;
-        while (item_preview.size() < 2) {
-            if (items.get(i).getId() != item.getId()) {
-                item_preview.add(items.get(i));
-            }
-            i++;
-        }
-
         // Set to show on DetailsActivity 'you might like'
-        ItemAdaptor item_adaptor = new ItemAdaptor(item_preview, this);
+        ItemAdaptor item_adaptor = new ItemAdaptor(details.suggestions, this);
         suggestItems.setAdapter(item_adaptor);
         suggestItems.setLayoutManager(new GridLayoutManager(this, 2));
-
-        // Add scroll listener
-        scrollView = findViewById(R.id.details_scroll_layout);
-        scrollView.getViewTreeObserver().addOnScrollChangedListener(this::onScrollChanged);
-
-        // Set FAB icon
-        favouriteButton = findViewById(R.id.details_favourite_button);
-        setFavouriteImage();
     }
 
     /**
@@ -172,4 +183,39 @@ public class DetailsActivity extends BaseActivity {
 
         setFavouriteImage();
     }
+
+    /**
+     * The fields shown for an item, which are read together off the main thread when they are in storage
+     */
+    private static final class Details {
+        final Collection<String> images;
+        final String title;
+        final String price;
+        final String description;
+        final List<Category> categories;
+        // Other items to suggest from the item's first category
+        final List<Item> suggestions;
+
+        Details(Item item) {
+            this.images = item.getImages();
+            this.title = item.getTitle();
+            this.price = item.getDisplayPrice();
+            this.description = item.getDescription();
+            this.categories = item.getCategories();
+
+            // Select first 2 from category, only reading its first page
+            List<Item> suggestions = new ArrayList<>();
+            if (!categories.isEmpty()) {
+                for (Item other : ItemSource.of(categories.get(0)).readPage(0)) {
+                    if (suggestions.size() == 2) {
+                        break;
+                    }
+                    if (!other.getId().equals(item.getId())) {
+                        suggestions.add(other);
+                    }
+                }
+            }
+            this.suggestions = suggestions;
+        }
+    }
 }
\ No newline at end of file
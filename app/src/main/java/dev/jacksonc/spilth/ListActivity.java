@@ -10,13 +10,14 @@ import android.widget.TextView;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Objects;
 
 import dev.jacksonc.spilth.adaptors.ItemAdaptor;
 import dev.jacksonc.spilth.data.Category;
 import dev.jacksonc.spilth.data.Item;
+import dev.jacksonc.spilth.data.ItemSet;
+import dev.jacksonc.spilth.data.ItemSource;
 
 /**
  * Activity displaying a list of items within a category
@@ -55,9 +56,9 @@ public class ListActivity extends BaseActivity {
         // Create RecyclerView
         RecyclerView rvItems = findViewById(R.id.rvItems);
 
-        // Get list of items from category and set RecyclerView
-        List<Item> items = new ArrayList<>(category.getItems());
-        adaptor =  new ItemAdaptor(items, this);
+        // Page through the items in the category by name and set RecyclerView
+        ItemSet items = ItemSet.inCategories(Collections.singletonList(category));
+        adaptor =  new ItemAdaptor(ItemSource.of(items, Item.SortOrder.NAME), this);
         rvItems.setAdapter(adaptor);
         int orientation = this.getResources().getConfiguration().orientation;
         if (orientation == Configuration.ORIENTATION_PORTRAIT) {
@@ -1,32 +1,48 @@
 package dev.jacksonc.spilth;
 
 import android.app.SearchManager;
+import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.os.Bundle;
-import android.provider.SearchRecentSuggestions;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.animation.AnimationUtils;
 import android.view.animation.LayoutAnimationController;
 import android.widget.Button;
+import android.widget.SearchView;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
 
 import dev.jacksonc.spilth.adaptors.ItemAdaptor;
 import dev.jacksonc.spilth.data.Category;
 import dev.jacksonc.spilth.data.Item;
+import dev.jacksonc.spilth.data.ItemSet;
+import dev.jacksonc.spilth.data.ItemSource;
+import dev.jacksonc.spilth.data.SearchEngine;
+import dev.jacksonc.spilth.data.SearchHistory;
 
 /**
  * Activity displaying a list of items based on a search query
@@ -34,17 +50,41 @@ import dev.jacksonc.spilth.data.Item;
  * @author Jackson
  */
 public class SearchActivity extends BaseActivity {
+    // How long typing has to pause for before the results are updated, in milliseconds
+    private static final long TYPE_AHEAD_DELAY = 300;
+
+    // How many results are put in order of relevance, a few pages more than fit on screen
+    private static final int RANKED_RESULTS = 5 * ItemSource.PAGE_SIZE;
+
+    // Searches run one at a time, off the UI thread
+    private static final ListeningExecutorService searcher =
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("search").setDaemon(true).build()));
 
     RecyclerView rvItems;
     TextView searchHeader;
+    SearchView searchView;
     Button priceSort;
     Button nameSort;
+    Button relevanceSort;
 
     String lastQuery;
 
-    SortCategory sortCategory = SortCategory.NAME;
+    // The results of the last search, which later queries extending it are narrowed down from,
+    // and which are only put in order again if the sort order changes
+    SearchResults lastResults;
+
+    final Handler typeAhead = new Handler(Looper.getMainLooper());
+
+    // The latest search, until its results are shown
+    ListenableFuture<SearchResults> pendingSearch;
+
+    // The order results are sorted in, or null to rank them by relevance
+    Item.SortOrder sortOrder = Item.SortOrder.NAME;
     boolean sortAscending = false;
     Collection<Category> filter = new ArrayList<>();
+    // The category of each filter chip, in the order they are shown
+    List<Category> facets = Collections.emptyList();
 
     /**
      * Initialises the SearchActivity and creates its components.
@@ -62,6 +102,30 @@ public class SearchActivity extends BaseActivity {
         // Create text
         searchHeader = findViewById(R.id.search_header);
 
+        // Search as the user types, once they pause. Submitted queries still arrive as intents
+        searchView = findViewById(R.id.search_query);
+        SearchManager manager = (SearchManager) getSystemService(Context.SEARCH_SERVICE);
+        searchView.setSearchableInfo(manager.getSearchableInfo(getComponentName()));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                typeAhead.removeCallbacksAndMessages(null);
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                typeAhead.removeCallbacksAndMessages(null);
+                if (!newText.equals(lastQuery)) {
+                    typeAhead.postDelayed(() -> {
+                        lastQuery = newText;
+                        newSearch(newText);
+                    }, TYPE_AHEAD_DELAY);
+                }
+                return true;
+            }
+        });
+
         // Create RecyclerView
         rvItems = findViewById(R.id.rvItems);
 
@@ -72,18 +136,17 @@ public class SearchActivity extends BaseActivity {
             rvItems.setLayoutManager(new GridLayoutManager(this, 4));
         }
 
-        // Handle initial intent
-        handleIntent(getIntent());
+        // Results arrive in the background, so start with an empty list
+        rvItems.setAdapter(new ItemAdaptor(ItemSource.of(Collections.emptyList()), this));
 
         // Create animation
         LayoutAnimationController controller = AnimationUtils.loadLayoutAnimation(this, R.anim.layout_animation_from_bottom);
         rvItems.setLayoutAnimation(controller);
-        Objects.requireNonNull(rvItems.getAdapter()).notifyDataSetChanged();
-        rvItems.scheduleLayoutAnimation();
 
-        // Add category filter buttons
+        // Add category filter buttons, before the first search counts the results in each one
         ChipGroup chipGroup = findViewById(R.id.search_filter_chips);
-        for (Category category : Category.getAll()) {
+        facets = Collections.unmodifiableList(new ArrayList<>(Category.getAll()));
+        for (Category category : facets) {
             Chip chip = new Chip(this);
             chip.setText(category.getName());
             chip.setCheckable(true);
@@ -92,12 +155,17 @@ public class SearchActivity extends BaseActivity {
             chipGroup.addView(chip);
         }
 
+        // Handle initial intent
+        handleIntent(getIntent());
+
         // Add sorting event handlers
         priceSort = findViewById(R.id.search_sort_price);
         nameSort = findViewById(R.id.search_sort_name);
+        relevanceSort = findViewById(R.id.search_sort_relevance);
 
-        priceSort.setOnClickListener(v -> onSort(SortCategory.PRICE));
-        nameSort.setOnClickListener(v -> onSort(SortCategory.NAME));
+        priceSort.setOnClickListener(v -> onSort(Item.SortOrder.PRICE));
+        nameSort.setOnClickListener(v -> onSort(Item.SortOrder.NAME));
+        relevanceSort.setOnClickListener(v -> onSort(null));
 
         setSortIcons();
     }
@@ -107,12 +175,18 @@ public class SearchActivity extends BaseActivity {
      *
      * If the same category is clicked, the mode will be changed.
      * Otherwise the category will be changed.
+     * The most relevant results are always shown first.
+     *
+     * @param clickedOrder the order that was clicked, or null for relevance
      */
-    private void onSort(SortCategory clickedCategory) {
-        if (sortCategory == clickedCategory) {
+    private void onSort(Item.SortOrder clickedOrder) {
+        if (clickedOrder == null) {
+            sortOrder = null;
+            sortAscending = false;
+        } else if (sortOrder == clickedOrder) {
             sortAscending = !sortAscending;
         } else {
-            sortCategory = clickedCategory;
+            sortOrder = clickedOrder;
         }
 
         setSortIcons();
@@ -131,16 +205,16 @@ public class SearchActivity extends BaseActivity {
             sortedIcon = R.drawable.ic_baseline_expand_more_24;
         }
 
-        if (sortCategory == SortCategory.NAME) {
-            nameSort.setCompoundDrawablesWithIntrinsicBounds(0, 0, sortedIcon, 0);
-            priceSort.setCompoundDrawablesWithIntrinsicBounds(0, 0, defaultIcon, 0);
-        } else {
-            priceSort.setCompoundDrawablesWithIntrinsicBounds(0, 0, sortedIcon, 0);
-            nameSort.setCompoundDrawablesWithIntrinsicBounds(0, 0, defaultIcon, 0);
-        }
+        nameSort.setCompoundDrawablesWithIntrinsicBounds(0, 0,
+                sortOrder == Item.SortOrder.NAME ? sortedIcon : defaultIcon, 0);
+        priceSort.setCompoundDrawablesWithIntrinsicBounds(0, 0,
+                sortOrder == Item.SortOrder.PRICE ? sortedIcon : defaultIcon, 0);
+        relevanceSort.setCompoundDrawablesWithIntrinsicBounds(0, 0,
+                sortOrder == null ? sortedIcon : defaultIcon, 0);
 
         nameSort.invalidate();
         priceSort.invalidate();
+        relevanceSort.invalidate();
     }
 
     /**
@@ -159,6 +233,8 @@ public class SearchActivity extends BaseActivity {
 
         this.filter = filters;
 
+        // Results for the old filter cannot be narrowed down to the new one
+        lastResults = null;
         newSearch(lastQuery);
     }
 
@@ -174,6 +250,28 @@ public class SearchActivity extends BaseActivity {
         Objects.requireNonNull(rvItems.getAdapter()).notifyDataSetChanged();
     }
 
+    /**
+     * Writes recent searches before the app may be killed in the background
+     */
+    @Override
+    protected void onStop() {
+        SearchHistory.flush();
+        super.onStop();
+    }
+
+    /**
+     * Cancels any search waiting for the user to stop typing, or still running
+     */
+    @Override
+    protected void onDestroy() {
+        typeAhead.removeCallbacksAndMessages(null);
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+        super.onDestroy();
+    }
+
     /**
      * Activates initialisation of activity based on intent.
      *
@@ -195,30 +293,79 @@ public class SearchActivity extends BaseActivity {
         if (Intent.ACTION_SEARCH.equals(intent.getAction())) {
             String query = intent.getStringExtra(SearchManager.QUERY);
             lastQuery = query;
+            searchView.setQuery(query, false);
+
+            // Save search as a suggestion, which is written to the database in the background
+            SearchHistory.add(query);
 
             newSearch(query);
         }
     }
 
     /**
-     * Initiates a new search
-     * @param query string to search
+     * Initiates a new search in the background, cancelling any search that is still running
+     * @param text string to search, or null if nothing has been entered yet
      */
-    private void newSearch(String query) {
-        // Get results from query
-        Collection<Item> items = search(query);
-        ItemAdaptor adaptor = new ItemAdaptor(new ArrayList<>(items), this);
+    private void newSearch(String text) {
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+        }
+
+        // Sorting or filtering before anything is entered searches for nothing, which lists every item
+        String query = text == null ? "" : text;
+
+        // The search only sees the state it was started with, as the user may change it meanwhile
+        SearchResults previous = lastResults;
+        Collection<Category> filter = this.filter;
+        List<Category> facets = this.facets;
+        Item.SortOrder sort = sortOrder;
+        boolean ascending = sortAscending;
+
+        ListenableFuture<SearchResults> search = searcher.submit(() ->
+                search(query, filter, facets, sort, ascending, previous));
+        pendingSearch = search;
+
+        Futures.addCallback(search, new FutureCallback<SearchResults>() {
+            @Override
+            public void onSuccess(SearchResults results) {
+                // Results of a superseded search must never replace newer ones
+                if (pendingSearch != search) {
+                    return;
+                }
+                pendingSearch = null;
+                showResults(results);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                if (!(t instanceof CancellationException)) {
+                    t.printStackTrace();
+                }
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    /**
+     * Shows the results of the latest search
+     */
+    private void showResults(SearchResults results) {
+        lastResults = results;
 
         // If there are results for the search, schedule animation for the recyclerView.
-        if (rvItems.getAdapter() != null) {
-            rvItems.swapAdapter(adaptor, false);
-            rvItems.scheduleLayoutAnimation();
-        } else {
-            rvItems.setAdapter(adaptor);
-        }
+        ItemAdaptor adaptor = new ItemAdaptor(results.items, this);
+        rvItems.swapAdapter(adaptor, false);
+        rvItems.scheduleLayoutAnimation();
 
         // Set layout header text
-        searchHeader.setText(getHeaderString(items.size(), query));
+        searchHeader.setText(getHeaderString(results.items.size(), results.query));
+
+        // Show how many of the results each filter chip would keep
+        ChipGroup chipGroup = findViewById(R.id.search_filter_chips);
+        for (int i = 0; i < chipGroup.getChildCount() && i < results.facetCounts.length; i++) {
+            Chip chip = (Chip) chipGroup.getChildAt(i);
+            Category category = (Category) chip.getTag();
+            chip.setText(getString(R.string.filter_chip_count, category.getName(), results.facetCounts[i]));
+        }
     }
 
     /**
@@ -239,86 +386,88 @@ public class SearchActivity extends BaseActivity {
     }
 
     /**
-     * Searches through all items' text for matches with the user's input query.
+     * Searches item titles, descriptions and category names for every word of the user's query.
+     * The last word also matches longer words it is the start of.
+     * <p>
+     * Runs on the search thread, and stops early if the search is cancelled.
      *
-     * @param query The user's input search string.
-     * @return A collection of items containing text matching the user's query.
+     * @param query         The user's input search string.
+     * @param filter        Categories every result must be listed in.
+     * @param facets        Categories to count the results listed in.
+     * @param sort          The order to sort results in, or null to rank them by relevance.
+     * @param ascending     Whether to reverse the sort order, unless sorting by relevance.
+     * @param previous      The results of the last search with the same filter, or null.
+     * @return The items containing text matching the user's query, sorted.
      */
-    private Collection<Item> search(String query) {
-        // Save search as a suggestion
-        SearchRecentSuggestions suggestions = new SearchRecentSuggestions(this, SearchProvider.AUTHORITY, SearchProvider.MODE);
-        suggestions.saveRecentQuery(query, null);
-
-        // Create array of items matching query
-        ArrayList<Item> items = new ArrayList<>();
-
-        for (Item item : Item.getAll()) {
-            // Convert query and all text to lower case so that search is case insensitive
-            String itemName = item.getTitle().toLowerCase();
-            String itemDescription = item.getDescription().toLowerCase();
-            query = query.toLowerCase();
-
-            // Get all categories to search through category names
-            Collection<Category> categories = item.getCategories();
-
-            // Filter based on categories
-            if (!categories.containsAll(filter)) {
-                continue;
-            }
-
-            // Check if each item's name or description contains user query
-            if (itemName.contains(query) || itemDescription.contains(query)) {
-                items.add(item);
-                continue;
-            }
-
-            // Check if each category name contains user query
-            for (Category category : categories) {
-                String categoryName = category.getName().toLowerCase();
-                if (categoryName.contains(query)) {
-                    items.add(item);
-                    break;
-                }
-            }
+    private static SearchResults search(String query, Collection<Category> filter, List<Category> facets,
+                                        Item.SortOrder sort, boolean ascending, SearchResults previous) {
+        // The same query has the same results, and while typing the last results can be narrowed down
+        ItemSet matches = null;
+        if (previous != null) {
+            matches = SearchEngine.refine(previous.matches, previous.query, query);
         }
-
-        // Sort items
-        Comparator<Item> sorter;
-        if (sortCategory == SortCategory.NAME) {
-            sorter = new nameComparator();
-        } else {
-            sorter = new priceComparator();
+        if (matches == null) {
+            // Look up the query's terms in the search index, keeping items listed in every selected category
+            matches = SearchEngine.search(query, filter);
         }
-        Collections.sort(items, sorter);
-        if (sortAscending) {
-            Collections.reverse(items);
+        checkCancelled();
+
+        ItemSource sorted;
+        if (previous != null && previous.matches == matches && previous.sort == sort) {
+            // Changing direction only reads the same order backwards
+            sorted = previous.sorted;
+        } else if (sort == null) {
+            // Only the most relevant results are ranked, without sorting the rest
+            sorted = SearchEngine.rank(matches, query, RANKED_RESULTS);
+        } else {
+            // Read the matches off the catalog's precomputed sort order
+            sorted = ItemSource.of(matches, sort);
         }
+        checkCancelled();
 
-        return items;
-    }
+        // Count the results in each category from the intersections of their bitmaps
+        int[] facetCounts;
+        if (previous != null && previous.matches == matches) {
+            facetCounts = previous.facetCounts;
+        } else {
+            facetCounts = new int[facets.size()];
+            for (int i = 0; i < facetCounts.length; i++) {
+                facetCounts[i] = matches.countIn(facets.get(i));
+            }
+        }
 
-    enum SortCategory {
-        NAME,
-        PRICE
+        ItemSource items = ascending && sort != null ? sorted.reversed() : sorted;
+        return new SearchResults(query, matches, sort, sorted, items, facetCounts);
     }
 
-    /**
-     * Sorts items based on their price
-     */
-    private static class priceComparator implements Comparator<Item> {
-        @Override
-        public int compare(Item a, Item b) {
-            return a.getPrice().compareTo(b.getPrice());
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
         }
     }
 
     /**
-     * Sorts items based on their name
+     * The outcome of a search, passed from the search thread back to the activity
      */
-    private static class nameComparator implements Comparator<Item> {
-        @Override
-        public int compare(Item a, Item b) {
-            return a.getTitle().compareTo(b.getTitle());
+    private static final class SearchResults {
+        final String query;
+        final ItemSet matches;
+        // Null if the matches were ranked by relevance
+        final Item.SortOrder sort;
+        // The matches in sort order, and in the order they are shown
+        final ItemSource sorted;
+        final ItemSource items;
+        // The number of matches listed in each filter chip's category
+        final int[] facetCounts;
+
+        SearchResults(String query, ItemSet matches, Item.SortOrder sort, ItemSource sorted, ItemSource items,
+                      int[] facetCounts) {
+            this.query = query;
+            this.matches = matches;
+            this.sort = sort;
+            this.sorted = sorted;
+            this.items = items;
+            this.facetCounts = facetCounts;
         }
     }
 
@@ -1,17 +1,108 @@
 package dev.jacksonc.spilth;
 
-import android.content.SearchRecentSuggestionsProvider;
+import android.app.SearchManager;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dev.jacksonc.spilth.data.SearchEngine;
+import dev.jacksonc.spilth.data.SearchHistory;
 
 /**
  * Provides search suggestions
+ * <p>
+ * Recent queries are suggested first, followed by the category names and item titles that the
+ * query completes to. Only recent queries are suggested before anything is typed.
  *
  * @author Jackson
  */
-public class SearchProvider extends SearchRecentSuggestionsProvider {
+public class SearchProvider extends ContentProvider {
     public final static String AUTHORITY = "dev.jacksonc.SearchProvider";
-    public final static int MODE = DATABASE_MODE_QUERIES;
 
-    public SearchProvider() {
-        setupSuggestions(AUTHORITY, MODE);
+    // The most suggestions shown, and how many of them may be recent queries once something is typed
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final int MAX_RECENT = 3;
+
+    private static final String[] COLUMNS = {
+            BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_ICON_1,
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_QUERY,
+    };
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    /**
+     * Merges recent queries with completions from the catalog
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String query = selectionArgs != null && selectionArgs.length > 0 && selectionArgs[0] != null
+                ? selectionArgs[0] : "";
+        boolean typed = !query.trim().isEmpty();
+
+        MatrixCursor suggestions = new MatrixCursor(COLUMNS, MAX_SUGGESTIONS);
+        List<String> shown = new ArrayList<>();
+        for (String recent : SearchHistory.get(query, typed ? MAX_RECENT : MAX_SUGGESTIONS)) {
+            suggestions.addRow(new Object[]{shown.size(), android.R.drawable.ic_menu_recent_history,
+                    recent, recent});
+            shown.add(recent.toLowerCase(Locale.ROOT));
+        }
+        if (!typed) {
+            return suggestions;
+        }
+
+        for (String completion : SearchEngine.suggest(query, MAX_SUGGESTIONS)) {
+            if (shown.size() == MAX_SUGGESTIONS) {
+                break;
+            }
+            // A recent query may already be the same as a completion
+            if (!shown.contains(completion.toLowerCase(Locale.ROOT))) {
+                suggestions.addRow(new Object[]{shown.size(), android.R.drawable.ic_menu_search,
+                        completion, completion});
+                shown.add(completion.toLowerCase(Locale.ROOT));
+            }
+        }
+        return suggestions;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return SearchManager.SUGGEST_MIME_TYPE;
+    }
+
+    /**
+     * Suggestions are read-only, and queries are recorded through SearchHistory instead, so
+     * nothing is inserted
+     */
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    /**
+     * Nothing is deleted, as suggestions are read-only
+     */
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    /**
+     * Nothing is updated, as suggestions are read-only
+     */
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
     }
 }
@@ -1,8 +1,10 @@
 package dev.jacksonc.spilth;
 
+import android.app.ActivityManager;
 import android.app.Application;
 import android.content.Context;
 
+import dev.jacksonc.spilth.data.DataProvider;
 
 /**
  * Application class that provides global context
@@ -20,5 +22,19 @@ public class Spilth extends Application {
     public void onCreate() {
         instance = this;
         super.onCreate();
+
+        // Keep the catalog out of the heap on devices with little memory
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager.isLowRamDevice()) {
+            DataProvider.setEngine(DataProvider.Engine.SQLITE);
+        }
+
+        // Builds split into shards parse them in parallel, unless there is only one core to parse on
+        if (BuildConfig.CATALOG_SHARDS > 0 && Runtime.getRuntime().availableProcessors() > 1) {
+            DataProvider.setSource(DataProvider.Source.SHARDED);
+        }
+
+        // Start loading the catalog while the splash screen is showing
+        DataProvider.load();
     }
 }
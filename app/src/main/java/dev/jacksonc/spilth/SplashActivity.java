@@ -4,10 +4,21 @@ import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
+import android.util.TypedValue;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 import android.widget.TextView;
 
+import androidx.core.content.ContextCompat;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ExecutionException;
+
+import dev.jacksonc.spilth.data.DataProvider;
+
 /**
  * Graphic screen on cold start of app.
  *
@@ -34,21 +45,72 @@ public class SplashActivity extends Activity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
 
-        // Set for splash screen to show for 3 seconds
-        handler=new Handler();
-        handler.postDelayed(() -> {
-            Intent intent = new Intent(SplashActivity.this,MainActivity.class);
-            startActivity(intent);
-
-            // Splash screen fades in and out smoothly over the MainActivity
-            overridePendingTransition(R.anim.fade_in, R.anim.fade_out);
-            finish();
-        },3000);
+        handler = new Handler();
 
         // Get logo and logo's animation, then play animation
         logo = findViewById(R.id.splash_logo);
         logo_anim = AnimationUtils.loadAnimation(this, R.anim.splash_anim);
         logo.startAnimation(logo_anim);
 
+        waitForCatalog();
+    }
+
+    /**
+     * Stops a finished or recreated splash screen from opening the MainActivity later
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Shows the splash screen until the catalog has loaded, for at least the minimum duration
+     */
+    private void waitForCatalog() {
+        long start = SystemClock.uptimeMillis();
+        int minDuration = getResources().getInteger(R.integer.splash_min_duration);
+
+        ListenableFuture<DataProvider> loading = DataProvider.load();
+        loading.addListener(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            try {
+                Futures.getDone(loading);
+            } catch (ExecutionException e) {
+                showError();
+                return;
+            }
+            long elapsed = SystemClock.uptimeMillis() - start;
+            handler.postDelayed(this::showMain, Math.max(0, minDuration - elapsed));
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    /**
+     * Tells the user the catalog could not be loaded, and loads it again when they tap the screen
+     */
+    private void showError() {
+        logo.clearAnimation();
+        logo.setTextSize(TypedValue.COMPLEX_UNIT_SP, 20);
+        logo.setText(R.string.splash_load_failed);
+        logo.setOnClickListener(v -> {
+            logo.setOnClickListener(null);
+            logo.setTextSize(TypedValue.COMPLEX_UNIT_SP, 60);
+            logo.setText(R.string.app_name);
+            waitForCatalog();
+        });
+    }
+
+    /**
+     * Leaves the splash screen and opens the MainActivity
+     */
+    private void showMain() {
+        Intent intent = new Intent(SplashActivity.this, MainActivity.class);
+        startActivity(intent);
+
+        // Splash screen fades in and out smoothly over the MainActivity
+        overridePendingTransition(R.anim.fade_in, R.anim.fade_out);
+        finish();
     }
 }
\ No newline at end of file
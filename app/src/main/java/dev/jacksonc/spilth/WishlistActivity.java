@@ -10,12 +10,13 @@ import android.widget.TextView;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
 
 import dev.jacksonc.spilth.adaptors.ItemAdaptor;
 import dev.jacksonc.spilth.data.Item;
+import dev.jacksonc.spilth.data.ItemSet;
+import dev.jacksonc.spilth.data.ItemSource;
 import dev.jacksonc.spilth.data.Wishlist;
 
 /**
@@ -57,9 +58,9 @@ public class WishlistActivity extends BaseActivity {
             wishlistHeader.setVisibility(View.GONE);
         }
       
-        // Create RecyclerView and display items in wishlist
+        // Create RecyclerView and display items in wishlist by name
         rvItems = findViewById(R.id.rvItems);
-        ItemAdaptor adaptor = new ItemAdaptor(new ArrayList<>(items), this);
+        ItemAdaptor adaptor = new ItemAdaptor(ItemSource.of(ItemSet.of(items), Item.SortOrder.NAME), this);
         rvItems.setAdapter(adaptor);
         int orientation = this.getResources().getConfiguration().orientation;
         if (orientation == Configuration.ORIENTATION_PORTRAIT) {
@@ -82,7 +83,8 @@ public class WishlistActivity extends BaseActivity {
     protected void onResume() {
         super.onResume();
 
-        ItemAdaptor adaptor = new ItemAdaptor(new ArrayList<>(Wishlist.getAll()), this);
+        ItemSet items = ItemSet.of(Wishlist.getAll());
+        ItemAdaptor adaptor = new ItemAdaptor(ItemSource.of(items, Item.SortOrder.NAME), this);
         rvItems.swapAdapter(adaptor, false);
     }
 
@@ -4,6 +4,8 @@ import android.app.Activity;
 import android.app.ActivityOptions;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,29 +14,48 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.core.view.ViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import dev.jacksonc.spilth.DetailsActivity;
 import dev.jacksonc.spilth.R;
 import dev.jacksonc.spilth.Spilth;
 import dev.jacksonc.spilth.data.Item;
+import dev.jacksonc.spilth.data.ItemSource;
 import dev.jacksonc.spilth.data.Wishlist;
 
 /**
  * RecyclerView Adaptor used to show a list of items
+ * <p>
+ * Items are read from an ItemSource one page at a time as the user scrolls.
+ * Pages held in memory are read as they are shown. Pages kept in storage are loaded in the
+ * background with every field that is shown, and their positions are shown as placeholders until
+ * they arrive.
  *
  * @author Jackson
  * @author Izzy
+ * @see ItemSource
  */
 public class ItemAdaptor extends RecyclerView.Adapter<ItemAdaptor.ViewHolder> {
-    private final List<Item> items;
+    // How close to the end of a page the next page starts loading
+    private static final int PREFETCH_DISTANCE = ItemSource.PAGE_SIZE / 4;
+
+    private final ItemSource source;
     private final EventListener listener;
 
+    // Pages that have been read, and pages that are being read, by page index
+    private final SparseArray<List<Row>> pages = new SparseArray<>();
+    private final SparseBooleanArray loading = new SparseBooleanArray();
+
     /**
      * Initialize the dataset of the Adapter using the default event listener.
      *
@@ -43,19 +64,35 @@ public class ItemAdaptor extends RecyclerView.Adapter<ItemAdaptor.ViewHolder> {
      * @param activity the activity to initialise the event listener with.
      */
     public ItemAdaptor(List<Item> dataSet, Activity activity){
-        this(dataSet, new DefaultEventListener(activity));
+        this(ItemSource.of(dataSet), new DefaultEventListener(activity));
+    }
+
+    /**
+     * Initialize the dataset of the Adapter using the default event listener.
+     *
+     * @param source   the source of the items to populate views to be used
+     *                 by RecyclerView.
+     * @param activity the activity to initialise the event listener with.
+     */
+    public ItemAdaptor(ItemSource source, Activity activity){
+        this(source, new DefaultEventListener(activity));
     }
 
     /**
      * Initialize the dataset of the Adapter.
      *
-     * @param dataSet  List containing the data to populate views to be used
+     * @param source   the source of the items to populate views to be used
      *                 by RecyclerView.
      * @param listener the EventListener to propagate events to.
      */
-    public ItemAdaptor(List<Item> dataSet, EventListener listener) {
-        this.items = dataSet;
+    public ItemAdaptor(ItemSource source, EventListener listener) {
+        this.source = source;
         this.listener = listener;
+
+        // Pages kept in storage are never read on the main thread, so the first is loaded straight away
+        if (source.isInStorage()) {
+            requestPage(0);
+        }
     }
 
     /**
@@ -76,23 +113,46 @@ public class ItemAdaptor extends RecyclerView.Adapter<ItemAdaptor.ViewHolder> {
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder viewHolder, final int position) {
-        Item item = items.get(position);
+        int page = ItemSource.getPageOf(position);
+        int offset = position - page * ItemSource.PAGE_SIZE;
+
+        List<Row> rows = pages.get(page);
+        if (rows == null && !source.isInStorage()) {
+            // Reading a page held in memory is cheaper than showing placeholders for it
+            rows = readRows(source.readPage(page));
+            pages.put(page, rows);
+        }
+
+        // Start loading the next page from storage before the user reaches it
+        if (source.isInStorage() && offset >= ItemSource.PAGE_SIZE - PREFETCH_DISTANCE) {
+            requestPage(page + 1);
+        }
+
+        if (rows == null) {
+            requestPage(page);
+            bindPlaceholder(viewHolder);
+            return;
+        }
+        Row row = rows.get(offset);
+        Item item = row.item;
 
         // Update Text
-        viewHolder.getItemName().setText(item.getTitle());
-        viewHolder.getItemPrice().setText(String.format("$%s", item.getPrice()));
+        viewHolder.getItemName().setText(row.title);
+        viewHolder.getItemPrice().setText(row.price);
 
         // Update Images
         viewHolder.setFavouriteButtonImage(item.isWishlisted());
-        String imagePath = (String) item.getImages().toArray()[0];
-        try {
-            InputStream image = Spilth.getContext().getAssets().open(imagePath);
-            Drawable d = Drawable.createFromStream(image, null);
-            viewHolder.getItemThumbnail().setImageDrawable(d);
-
-            viewHolder.resizeImage();
-        } catch (IOException e) {
-            e.printStackTrace();
+        viewHolder.getItemThumbnail().setImageDrawable(null);
+        if (row.thumbnail != null) {
+            try {
+                InputStream image = Spilth.getContext().getAssets().open(row.thumbnail);
+                Drawable d = Drawable.createFromStream(image, null);
+                viewHolder.getItemThumbnail().setImageDrawable(d);
+
+                viewHolder.resizeImage();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
 
         // Propagate Events
@@ -103,12 +163,80 @@ public class ItemAdaptor extends RecyclerView.Adapter<ItemAdaptor.ViewHolder> {
         ViewCompat.setTransitionName(viewHolder.getItemThumbnail(), item.getId().toString());
     }
 
+    /**
+     * Shows an empty view for an item whose page has not been read yet
+     */
+    private void bindPlaceholder(ViewHolder viewHolder) {
+        viewHolder.getItemName().setText(null);
+        viewHolder.getItemPrice().setText(null);
+        viewHolder.getItemThumbnail().setImageDrawable(null);
+        viewHolder.setFavouriteButtonImage(false);
+
+        viewHolder.getItemFavouriteButton().setOnClickListener(null);
+        viewHolder.getItemThumbnail().setOnClickListener(null);
+        ViewCompat.setTransitionName(viewHolder.getItemThumbnail(), null);
+    }
+
+    /**
+     * Reads the fields shown for each item on a page
+     */
+    private static List<Row> readRows(List<Item> items) {
+        List<Row> rows = new ArrayList<>(items.size());
+        for (Item item : items) {
+            rows.add(new Row(item));
+        }
+        return rows;
+    }
+
+    /**
+     * Loads a page from storage in the background, if it has not been loaded already
+     */
+    private void requestPage(int page) {
+        if (page >= source.getPageCount() || pages.get(page) != null || loading.get(page)) {
+            return;
+        }
+        loading.put(page, true);
+
+        Futures.addCallback(source.loadPage(page, Row::new), new FutureCallback<List<Row>>() {
+            @Override
+            public void onSuccess(List<Row> rows) {
+                loading.delete(page);
+                pages.put(page, rows);
+                notifyItemRangeChanged(page * ItemSource.PAGE_SIZE, rows.size());
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                // Allow the page to be requested again the next time it is shown
+                loading.delete(page);
+                t.printStackTrace();
+            }
+        }, ContextCompat.getMainExecutor(Spilth.getContext()));
+    }
+
     /**
      * Returns the total number of items in the data set held by the adapter.
      */
     @Override
     public int getItemCount() {
-        return items.size();
+        return source.size();
+    }
+
+    /**
+     * The fields shown for an item, which are read together off the main thread when they are in storage
+     */
+    private static final class Row {
+        final Item item;
+        final String title;
+        final String price;
+        final String thumbnail;
+
+        Row(Item item) {
+            this.item = item;
+            this.title = item.getTitle();
+            this.price = item.getDisplayPrice();
+            this.thumbnail = item.getThumbnail();
+        }
     }
 
     /**
@@ -17,7 +17,6 @@ import androidx.viewpager.widget.PagerAdapter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
 
 import dev.jacksonc.spilth.DetailsActivity;
@@ -91,8 +90,8 @@ public class ViewPagerTextAdaptor extends PagerAdapter {
         }
 
         // Set text
-        nameView.setText(String.format(Locale.getDefault(), "%s", item.getTitle()));
-        priceView.setText(String.format(Locale.getDefault(), "$%.2f", item.getPrice()));
+        nameView.setText(item.getTitle());
+        priceView.setText(item.getDisplayPrice());
 
         // Event Propagation
         itemView.setOnClickListener(v -> listener.onClick(item, imageView));
@@ -0,0 +1,192 @@
+package dev.jacksonc.spilth.data;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Provides the ability to read the binary catalog generated at build time by the
+ * compileCatalog Gradle task (see app/catalog.gradle for the file layout).
+ * <p>
+ * The catalog is memory mapped from an uncompressed asset, so nothing is parsed or copied
+ * until a record is actually read. Item descriptions are never copied out of the mapping; writers
+ * are given their location instead.
+ *
+ * @author Jackson
+ */
+public class BinaryCatalogReader {
+    public static final String CATALOG_ASSET = "data.catalog";
+
+    private static final int MAGIC = 0x53504C43;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CATEGORY_RECORD_SIZE = 36;
+    private static final int ITEM_RECORD_SIZE = 52;
+
+    private final ByteBuffer buffer;
+
+    private final int stringCount;
+    private final int categoryCount;
+    private final int itemCount;
+    private final int stringsOffset;
+    private final int categoriesOffset;
+    private final int itemsOffset;
+    private final int membersOffset;
+    private final int imagesOffset;
+    private final int sortsOffset;
+
+    /**
+     * Create a new BinaryCatalogReader over the provided buffer
+     *
+     * @param buffer the buffer containing the binary catalog
+     * @throws IOException if the buffer does not contain a supported catalog
+     */
+    BinaryCatalogReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary catalog");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog version " + buffer.getInt(4));
+        }
+
+        this.stringCount = buffer.getInt(8);
+        this.categoryCount = buffer.getInt(12);
+        this.itemCount = buffer.getInt(16);
+        this.stringsOffset = buffer.getInt(20);
+        this.categoriesOffset = buffer.getInt(24);
+        this.itemsOffset = buffer.getInt(28);
+        this.membersOffset = buffer.getInt(32);
+        this.imagesOffset = buffer.getInt(36);
+        this.sortsOffset = buffer.getInt(40);
+
+        if (buffer.limit() < sortsOffset + 8L * itemCount) {
+            throw new IOException("Truncated catalog");
+        }
+    }
+
+    /**
+     * Memory maps the catalog asset
+     *
+     * @param assets the AssetManager containing the catalog
+     * @return a reader over the mapped catalog
+     * @throws IOException if the asset is missing, compressed or invalid
+     */
+    public static BinaryCatalogReader open(AssetManager assets) throws IOException {
+        try (AssetFileDescriptor descriptor = assets.openFd(CATALOG_ASSET);
+             FileInputStream stream = descriptor.createInputStream();
+             FileChannel channel = stream.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+            return new BinaryCatalogReader(buffer);
+        }
+    }
+
+    /**
+     * Memory maps a catalog file, such as one written by BinaryCatalogWriter
+     *
+     * @param file the catalog file
+     * @return a reader over the mapped catalog
+     * @throws IOException if the file is missing or invalid
+     */
+    static BinaryCatalogReader open(File file) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file);
+             FileChannel channel = stream.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryCatalogReader(buffer);
+        }
+    }
+
+    /**
+     * Reads the catalog, adding every category, item, category index and sort order to the writer
+     *
+     * @param writer the CatalogWriter to populate
+     */
+    public void read(CatalogWriter writer) {
+        for (int i = 0; i < categoryCount; i++) {
+            int record = categoriesOffset + i * CATEGORY_RECORD_SIZE;
+            UUID id = new UUID(buffer.getLong(record), buffer.getLong(record + 8));
+
+            String name = getString(buffer.getInt(record + 16));
+            String description = getString(buffer.getInt(record + 20));
+            String image = getString(buffer.getInt(record + 24));
+            writer.addCategory(id, name, description, image);
+        }
+
+        for (int i = 0; i < itemCount; i++) {
+            int record = itemsOffset + i * ITEM_RECORD_SIZE;
+            UUID id = new UUID(buffer.getLong(record), buffer.getLong(record + 8));
+
+            String title = getString(buffer.getInt(record + 16));
+            int description = buffer.getInt(record + 20);
+            long price = Prices.toCents(buffer.getLong(record + 24), buffer.getInt(record + 32));
+
+            int imagesStart = buffer.getInt(record + 36);
+            int imagesLength = buffer.getInt(record + 40);
+            List<String> images = new ArrayList<>(imagesLength);
+            for (int j = 0; j < imagesLength; j++) {
+                images.add(getString(buffer.getInt(imagesOffset + 4 * (imagesStart + j))));
+            }
+
+            // Descriptions are left in the mapped catalog until they are shown
+            int item = writer.addItem(id, title, buffer, getStringOffset(description),
+                    getStringLength(description), price, images);
+
+            int categoriesStart = buffer.getInt(record + 44);
+            int categoriesLength = buffer.getInt(record + 48);
+            for (int j = 0; j < categoriesLength; j++) {
+                int category = buffer.getInt(membersOffset + 4 * (categoriesStart + j));
+                writer.addItemToCategory(item, category);
+            }
+        }
+
+        writer.setSortOrder(Item.SortOrder.NAME, getSortOrder(0));
+        writer.setSortOrder(Item.SortOrder.PRICE, getSortOrder(1));
+    }
+
+    private int[] getSortOrder(int index) {
+        int offset = sortsOffset + 4 * index * itemCount;
+
+        int[] sorted = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            sorted[i] = buffer.getInt(offset + 4 * i);
+        }
+        return sorted;
+    }
+
+    private String getString(int index) {
+        return TextStore.decode(buffer, getStringOffset(index), getStringLength(index));
+    }
+
+    /**
+     * Returns the position of a string's bytes within the catalog
+     */
+    private int getStringOffset(int index) {
+        if (index < 0 || index >= stringCount) {
+            return 0;
+        }
+
+        int table = stringsOffset + 4 * (stringCount + 1);
+        return table + buffer.getInt(stringsOffset + 4 * index);
+    }
+
+    /**
+     * Returns the length of a string in bytes, or TextStore.NO_TEXT if the string is null
+     */
+    private int getStringLength(int index) {
+        if (index < 0 || index >= stringCount) {
+            return TextStore.NO_TEXT;
+        }
+
+        return buffer.getInt(stringsOffset + 4 * (index + 1)) - buffer.getInt(stringsOffset + 4 * index);
+    }
+}
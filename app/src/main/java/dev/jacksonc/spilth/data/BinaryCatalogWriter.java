@@ -0,0 +1,200 @@
+package dev.jacksonc.spilth.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Provides the ability to write a catalog snapshot in the binary catalog format, so that it can be
+ * memory mapped by BinaryCatalogReader later.
+ * <p>
+ * The layout is the same as the catalog compiled by the compileCatalog Gradle task (see
+ * app/catalog.gradle). Keep the three in sync.
+ *
+ * @author Jackson
+ * @see BinaryCatalogReader
+ * @see CatalogCache
+ */
+class BinaryCatalogWriter {
+    private static final int MAGIC = 0x53504C43;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CATEGORY_RECORD_SIZE = 36;
+    private static final int ITEM_RECORD_SIZE = 52;
+
+    private final List<byte[]> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private int stringBytes = 0;
+
+    private BinaryCatalogWriter() {
+    }
+
+    /**
+     * Writes a catalog to a file, replacing it atomically so that readers never see a partial file
+     *
+     * @param catalog a snapshot that has not had any entries removed
+     * @param file    the file to write
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Catalog catalog, File file) throws IOException {
+        ByteBuffer buffer = new BinaryCatalogWriter().encode(catalog);
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            stream.write(buffer.array());
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    private ByteBuffer encode(Catalog catalog) {
+        int categoryCount = catalog.getCategories().size();
+        int itemCount = catalog.getItems().size();
+        if (categoryCount != catalog.getCategoryCount() || itemCount != catalog.getItemCount()) {
+            throw new IllegalArgumentException("Only catalogs without removed entries can be written");
+        }
+
+        // Intern strings before sizing the string table
+        int[][] categoryStrings = new int[categoryCount][];
+        for (int i = 0; i < categoryCount; i++) {
+            categoryStrings[i] = new int[]{intern(catalog.getName(i)),
+                    intern(catalog.getCategoryDescription(i)), intern(catalog.getCategoryImage(i))};
+        }
+        int[][] itemStrings = new int[itemCount][];
+        int[][] itemImages = new int[itemCount][];
+        int imageCount = 0;
+        int memberCount = 0;
+        for (int i = 0; i < itemCount; i++) {
+            itemStrings[i] = new int[]{intern(catalog.getTitle(i)), intern(catalog.getDescription(i))};
+
+            List<String> images = catalog.getImages(i);
+            itemImages[i] = new int[images.size()];
+            for (int j = 0; j < images.size(); j++) {
+                itemImages[i][j] = intern(images.get(j));
+            }
+            imageCount += images.size();
+            memberCount += 2 * catalog.getCategories(i).size();
+        }
+
+        int stringsOffset = HEADER_SIZE;
+        int categoriesOffset = align(stringsOffset + 4 * (strings.size() + 1) + stringBytes);
+        int itemsOffset = categoriesOffset + CATEGORY_RECORD_SIZE * categoryCount;
+        int membersOffset = itemsOffset + ITEM_RECORD_SIZE * itemCount;
+        int imagesOffset = membersOffset + 4 * memberCount;
+        int sortsOffset = imagesOffset + 4 * imageCount;
+        int size = sortsOffset + 8 * itemCount;
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+
+        // Header
+        out.putInt(MAGIC).putInt(VERSION);
+        out.putInt(strings.size()).putInt(categoryCount).putInt(itemCount);
+        out.putInt(stringsOffset).putInt(categoriesOffset).putInt(itemsOffset);
+        out.putInt(membersOffset).putInt(imagesOffset).putInt(sortsOffset);
+
+        // Strings
+        out.position(stringsOffset);
+        int stringOffset = 0;
+        for (byte[] string : strings) {
+            out.putInt(stringOffset);
+            stringOffset += string.length;
+        }
+        out.putInt(stringOffset);
+        for (byte[] string : strings) {
+            out.put(string);
+        }
+
+        // Categories and their members
+        int member = 0;
+        out.position(categoriesOffset);
+        for (int i = 0; i < categoryCount; i++) {
+            putId(out, catalog.getCategoryId(i));
+            out.putInt(categoryStrings[i][0]).putInt(categoryStrings[i][1]).putInt(categoryStrings[i][2]);
+            int members = catalog.getItemOrdinals(i).length;
+            out.putInt(member).putInt(members);
+            member += members;
+        }
+
+        // Items, their categories and their images
+        int image = 0;
+        for (int i = 0; i < itemCount; i++) {
+            putId(out, catalog.getItemId(i));
+            out.putInt(itemStrings[i][0]).putInt(itemStrings[i][1]);
+            out.putLong(catalog.getPrice(i)).putInt(Prices.SCALE);
+            out.putInt(image).putInt(itemImages[i].length);
+            int members = catalog.getCategories(i).size();
+            out.putInt(member).putInt(members);
+            image += itemImages[i].length;
+            member += members;
+        }
+
+        out.position(membersOffset);
+        for (int i = 0; i < categoryCount; i++) {
+            for (int item : catalog.getItemOrdinals(i)) {
+                out.putInt(item);
+            }
+        }
+        for (int i = 0; i < itemCount; i++) {
+            for (Category category : catalog.getCategories(i)) {
+                out.putInt(category.getOrdinal());
+            }
+        }
+
+        out.position(imagesOffset);
+        for (int[] images : itemImages) {
+            for (int string : images) {
+                out.putInt(string);
+            }
+        }
+
+        out.position(sortsOffset);
+        putSortOrder(out, catalog, Item.SortOrder.NAME, itemCount);
+        putSortOrder(out, catalog, Item.SortOrder.PRICE, itemCount);
+
+        return out;
+    }
+
+    private int intern(String string) {
+        if (string == null) {
+            return -1;
+        }
+
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            index = strings.size();
+            strings.add(encoded);
+            stringIndexes.put(string, index);
+            stringBytes += encoded.length;
+        }
+        return index;
+    }
+
+    private static void putId(ByteBuffer out, UUID id) {
+        out.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+    }
+
+    private static void putSortOrder(ByteBuffer out, Catalog catalog, Item.SortOrder order, int itemCount) {
+        int[] sorted = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            sorted[catalog.getRank(order, i)] = i;
+        }
+        for (int ordinal : sorted) {
+            out.putInt(ordinal);
+        }
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+}
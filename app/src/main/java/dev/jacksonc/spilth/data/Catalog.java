@@ -0,0 +1,391 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A snapshot of the catalog.
+ * <p>
+ * Snapshots can be read from any thread without locking. DataProvider publishes the current
+ * snapshot and swaps in a new one whenever the catalog is reloaded or patched.
+ * <p>
+ * Every item and category is given a dense ordinal that never changes for the life of the
+ * snapshot. Item and Category are lightweight views that read their fields from the snapshot by
+ * ordinal, so how the fields are stored is left to each storage engine.
+ *
+ * @author Jackson
+ * @see DataProvider
+ * @see MemoryCatalog
+ * @see SqliteCatalog
+ */
+abstract class Catalog {
+    // Sets at least this many times smaller than the catalog are sorted by rank instead
+    private static final int SMALL_SORT_RATIO = 16;
+
+    // Formatted prices in every locale they have been asked for
+    private final Map<Locale, Prices.Labels> priceLabels = new ConcurrentHashMap<>();
+
+    // Built when first needed, unless it was updated from the index of the snapshot before a patch
+    private volatile SearchEngine searchEngine = null;
+
+    /*
+     * Items
+     */
+
+    abstract Item getItem(int ordinal);
+
+    /**
+     * Returns the item with an id, or null if there is no such item
+     */
+    abstract Item getItem(UUID id);
+
+    abstract List<Item> getItems();
+
+    /**
+     * Returns the number of item ordinals, including those of removed items
+     */
+    abstract int getItemCount();
+
+    /**
+     * Returns whether reading the fields of an item may read storage, instead of only memory
+     */
+    abstract boolean isInStorage();
+
+    /**
+     * Returns a bitmap containing the ordinal of every item that has not been removed
+     */
+    abstract OrdinalBitmap getAllItems();
+
+    UUID getItemId(int ordinal) {
+        return new UUID(getItemIdMost(ordinal), getItemIdLeast(ordinal));
+    }
+
+    /**
+     * Returns the most significant bits of an item's id, which can be compared without creating a UUID
+     */
+    abstract long getItemIdMost(int ordinal);
+
+    /**
+     * Returns the least significant bits of an item's id, which can be compared without creating a UUID
+     */
+    abstract long getItemIdLeast(int ordinal);
+
+    abstract String getTitle(int ordinal);
+
+    abstract String getDescription(int ordinal);
+
+    /**
+     * Returns the price of an item in cents
+     */
+    abstract long getPrice(int ordinal);
+
+    /**
+     * Returns the price of an item formatted for display, which is only formatted the first time it
+     * is asked for in a locale
+     */
+    String getPriceLabel(int ordinal, Locale locale) {
+        Prices.Labels labels = priceLabels.get(locale);
+        if (labels == null) {
+            Prices.Labels created = new Prices.Labels(locale, getItemCount());
+            labels = priceLabels.putIfAbsent(locale, created);
+            if (labels == null) {
+                labels = created;
+            }
+        }
+        return labels.get(ordinal, getPrice(ordinal));
+    }
+
+    abstract List<String> getImages(int ordinal);
+
+    /**
+     * Returns the first image of an item, or null if it has none
+     */
+    abstract String getThumbnail(int ordinal);
+
+    /**
+     * Returns the position of an item when every item is sorted in an order
+     */
+    abstract int getRank(Item.SortOrder order, int ordinal);
+
+    /**
+     * Returns the ordinal of every item that has not been removed, sorted in an order
+     * <p>
+     * The array is shared with the catalog and must not be modified.
+     */
+    abstract int[] getSortedOrdinals(Item.SortOrder order);
+
+    /**
+     * Returns the ordinals of a set of items, sorted in an order, without comparing any items.
+     * <p>
+     * A large set is read off the precomputed order by keeping the ordinals it contains, in one
+     * pass over the catalog. A set much smaller than the catalog instead has the ranks of its
+     * items sorted, and each rank turned back into an ordinal.
+     *
+     * @param items the ordinals of items that have not been removed
+     * @param order the order to sort the items in
+     */
+    int[] sort(OrdinalBitmap items, Item.SortOrder order) {
+        int[] sorted = getSortedOrdinals(order);
+        int[] result = new int[items.cardinality()];
+
+        if ((long) result.length * SMALL_SORT_RATIO < sorted.length) {
+            OrdinalBitmap.OrdinalIterator iterator = items.iterator();
+            for (int i = 0; i < result.length; i++) {
+                result[i] = getRank(order, iterator.next());
+            }
+            Arrays.sort(result);
+            for (int i = 0; i < result.length; i++) {
+                result[i] = sorted[result[i]];
+            }
+        } else {
+            int size = 0;
+            for (int i = 0; i < sorted.length && size < result.length; i++) {
+                if (items.contains(sorted[i])) {
+                    result[size++] = sorted[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get all categories that a particular Item is listed as.
+     *
+     * @param ordinal the ordinal of the item
+     * @return an immutable list of all categories listed by the item, in catalog order.
+     */
+    abstract List<Category> getCategories(int ordinal);
+
+    /**
+     * Visits the title and description of every item that has not been removed, in ordinal order
+     */
+    void forEachItemText(TextVisitor visitor) {
+        for (Item item : getItems()) {
+            int ordinal = item.getOrdinal();
+            visitor.visit(ordinal, getTitle(ordinal), getDescription(ordinal));
+        }
+    }
+
+    /*
+     * Categories
+     */
+
+    abstract Category getCategory(int ordinal);
+
+    /**
+     * Returns the category with an id, or null if there is no such category
+     */
+    abstract Category getCategory(UUID id);
+
+    abstract List<Category> getCategories();
+
+    /**
+     * Returns the number of category ordinals, including those of removed categories
+     */
+    abstract int getCategoryCount();
+
+    UUID getCategoryId(int ordinal) {
+        return new UUID(getCategoryIdMost(ordinal), getCategoryIdLeast(ordinal));
+    }
+
+    abstract long getCategoryIdMost(int ordinal);
+
+    abstract long getCategoryIdLeast(int ordinal);
+
+    abstract String getName(int ordinal);
+
+    abstract String getCategoryDescription(int ordinal);
+
+    abstract String getCategoryImage(int ordinal);
+
+    /**
+     * Gets all Items within a category
+     *
+     * @param ordinal the ordinal of the category
+     * @return an immutable list of all items included in provided category, in catalog order
+     */
+    abstract List<Item> getItems(int ordinal);
+
+    /**
+     * Returns the ordinals of all items within a category, in ascending order
+     * <p>
+     * The array may be shared with the catalog and must not be modified.
+     *
+     * @param ordinal the ordinal of the category
+     */
+    abstract int[] getItemOrdinals(int ordinal);
+
+    /**
+     * Returns a bitmap of the ordinals of all items within a category
+     *
+     * @param ordinal the ordinal of the category
+     */
+    abstract OrdinalBitmap getItemBitmap(int ordinal);
+
+    /*
+     * Search
+     */
+
+    /**
+     * Returns the search index of this snapshot, building it if needed
+     */
+    SearchEngine getSearchEngine() {
+        SearchEngine engine = searchEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = searchEngine;
+                if (engine == null) {
+                    engine = SearchEngine.build(this);
+                    searchEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Builds the index of the text of every item, for the search index of this snapshot
+     */
+    TextIndex buildTextIndex() {
+        return MemoryTextIndex.build(this);
+    }
+
+    /**
+     * Returns the search index of this snapshot, or null if it has not been built
+     */
+    SearchEngine getBuiltSearchEngine() {
+        return searchEngine;
+    }
+
+    void setSearchEngine(SearchEngine engine) {
+        searchEngine = engine;
+    }
+
+    /*
+     * Updates
+     */
+
+    /**
+     * Returns a new snapshot with a patch applied
+     *
+     * @param patch the changes to apply
+     * @throws IllegalStateException    if an item is listed in a category that does not exist
+     * @throws IllegalArgumentException if an added item is missing its title or price
+     */
+    abstract Catalog apply(CatalogPatch patch);
+
+    /**
+     * Sorts ordinals, keeping equal ordinals in their current order
+     */
+    static int[] sort(int[] ordinals, IntComparator comparator) {
+        // A bottom-up merge sort, which is stable and never boxes an ordinal
+        int[] sorted = ordinals.clone();
+        int[] buffer = new int[sorted.length];
+        for (int width = 1; width < sorted.length; width *= 2) {
+            for (int low = 0; low < sorted.length; low += 2 * width) {
+                int middle = Math.min(low + width, sorted.length);
+                int high = Math.min(low + 2 * width, sorted.length);
+
+                // Runs already in order, as orders read from storage usually are, are copied as is
+                if (middle == high || comparator.compare(sorted[middle - 1], sorted[middle]) <= 0) {
+                    System.arraycopy(sorted, low, buffer, low, high - low);
+                    continue;
+                }
+
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    buffer[k++] = comparator.compare(sorted[j], sorted[i]) < 0 ? sorted[j++] : sorted[i++];
+                }
+                System.arraycopy(sorted, i, buffer, k, middle - i);
+                System.arraycopy(sorted, j, buffer, k + middle - i, high - j);
+            }
+
+            int[] swap = sorted;
+            sorted = buffer;
+            buffer = swap;
+        }
+        return sorted;
+    }
+
+    /**
+     * Updates a sort order after the sort keys of some items have changed
+     *
+     * @param sorted     the previous sort order
+     * @param changed    items whose sort key changed, or that were added or removed
+     * @param live       the items that have not been removed
+     * @param comparator compares the new sort keys
+     */
+    static int[] merge(int[] sorted, List<Integer> changed, OrdinalBitmap live, IntComparator comparator) {
+        if (changed.isEmpty()) {
+            return sorted;
+        }
+
+        int[] touched = new int[changed.size()];
+        for (int i = 0; i < touched.length; i++) {
+            touched[i] = changed.get(i);
+        }
+        Arrays.sort(touched);
+
+        int[] unchanged = new int[sorted.length];
+        int size = 0;
+        for (int ordinal : sorted) {
+            if (Arrays.binarySearch(touched, ordinal) < 0) {
+                unchanged[size++] = ordinal;
+            }
+        }
+
+        // Keep each live item once
+        int kept = 0;
+        for (int i = 0; i < touched.length; i++) {
+            if ((i == 0 || touched[i] != touched[i - 1]) && live.contains(touched[i])) {
+                touched[kept++] = touched[i];
+            }
+        }
+        int[] resorted = sort(Arrays.copyOf(touched, kept), comparator);
+
+        // Each changed item is placed by a binary search, so comparisons grow with the number of
+        // changes rather than the size of the catalog
+        int[] result = new int[size + kept];
+        int i = 0;
+        int k = 0;
+        for (int j = 0; j < kept; j++) {
+            int end = insertionPoint(unchanged, i, size, resorted[j], comparator);
+            System.arraycopy(unchanged, i, result, k, end - i);
+            k += end - i;
+            i = end;
+            result[k++] = resorted[j];
+        }
+        System.arraycopy(unchanged, i, result, k, size - i);
+        return result;
+    }
+
+    /**
+     * Returns the index in a sorted range of the first ordinal that sorts after another
+     */
+    private static int insertionPoint(int[] sorted, int from, int to, int ordinal, IntComparator comparator) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(sorted[middle], ordinal) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Receives the text of items
+     */
+    interface TextVisitor {
+        void visit(int ordinal, String title, String description);
+    }
+}
@@ -0,0 +1,115 @@
+package dev.jacksonc.spilth.data;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A cache of the catalog built from a raw JSON resource, kept in the app's files directory.
+ * <p>
+ * The first time a resource is parsed the built catalog is written out in the binary catalog
+ * format, which later launches memory map instead of parsing the JSON again. Cache files are named
+ * by a hash of the resource, so a changed resource simply misses the cache and replaces it.
+ *
+ * @author Jackson
+ * @see BinaryCatalogWriter
+ * @see BinaryCatalogReader
+ */
+final class CatalogCache {
+    private static final String DIRECTORY = "catalog-cache";
+    private static final String EXTENSION = ".catalog";
+
+    private final File directory;
+    private final File file;
+
+    private CatalogCache(File directory, String key) {
+        this.directory = directory;
+        this.file = new File(directory, key + EXTENSION);
+    }
+
+    /**
+     * Returns the cache for the current contents of a raw resource
+     *
+     * @param context    the context containing the resource
+     * @param resourceId the id of the raw resource
+     * @throws IOException if the resource cannot be read
+     */
+    static CatalogCache forResource(Context context, int resourceId) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // Hashing only reads the bytes, which is far cheaper than parsing them
+        byte[] buffer = new byte[8192];
+        try (InputStream stream = new DigestInputStream(context.getResources().openRawResource(resourceId), digest)) {
+            while (stream.read(buffer) != -1) {
+                // Read to the end
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new CatalogCache(new File(context.getFilesDir(), DIRECTORY), key.toString());
+    }
+
+    /**
+     * Memory maps the cached catalog
+     *
+     * @throws FileNotFoundException if the resource has not been cached since it last changed
+     * @throws IOException           if the cached catalog cannot be read
+     */
+    BinaryCatalogReader open() throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+
+        try {
+            return BinaryCatalogReader.open(file);
+        } catch (IOException e) {
+            // Drop a damaged cache, so that it is written again
+            delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the cached catalog, such as when it turns out to be damaged
+     */
+    void delete() {
+        file.delete();
+    }
+
+    /**
+     * Writes a catalog built from the resource to the cache, replacing any cached older versions
+     *
+     * @param catalog a snapshot built from the resource, without any patches applied
+     * @throws IOException if the cache cannot be written
+     */
+    void write(Catalog catalog) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        BinaryCatalogWriter.write(catalog, file);
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File cached : files) {
+                if (!cached.equals(file)) {
+                    cached.delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package dev.jacksonc.spilth.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * The on-device database used by SqliteCatalog.
+ * <p>
+ * Each item and category is stored as a row whose primary key is its ordinal. Memberships are
+ * stored in both directions, and prices and name ranks are indexed, so category lists and both
+ * sort orders can be read straight from an index.
+ * <p>
+ * The search index of item text is stored alongside the rows: the items containing each term,
+ * with how often it appears in their title and description, and the folded text of each title
+ * from the start of every word, for completions.
+ * <p>
+ * The database only ever holds the bundled data. Patches are kept in memory by each snapshot, so
+ * rows are never changed while a snapshot may be reading them.
+ *
+ * @author Jackson
+ * @see SqliteCatalog
+ */
+class CatalogDatabase extends SQLiteOpenHelper {
+    private static final String NAME = "catalog.db";
+    private static final int VERSION = 5;
+
+    private static CatalogDatabase instance = null;
+
+    private CatalogDatabase(Context context) {
+        super(context, NAME, null, VERSION);
+        // Lets the UI keep reading while the database is being populated
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the database, opening it if needed
+     */
+    static synchronized SQLiteDatabase get(Context context) {
+        if (instance == null) {
+            instance = new CatalogDatabase(context.getApplicationContext());
+        }
+        return instance.getWritableDatabase();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Also records the locale that items' name ranks were collated for, and the total number
+        // of terms in all titles and descriptions
+        db.execSQL("CREATE TABLE meta ("
+                + "key TEXT PRIMARY KEY, "
+                + "value TEXT)");
+        db.execSQL("CREATE TABLE categories ("
+                + "ordinal INTEGER PRIMARY KEY, "
+                + "id TEXT NOT NULL UNIQUE, "
+                + "name TEXT, "
+                + "description TEXT, "
+                + "image TEXT)");
+        // Prices are stored in cents
+        db.execSQL("CREATE TABLE items ("
+                + "ordinal INTEGER PRIMARY KEY, "
+                + "id TEXT NOT NULL UNIQUE, "
+                + "title TEXT, "
+                + "description TEXT, "
+                + "price INTEGER NOT NULL, "
+                + "name_rank INTEGER, "
+                + "title_length INTEGER NOT NULL, "
+                + "description_length INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX items_price ON items (price, ordinal)");
+        db.execSQL("CREATE INDEX items_name ON items (name_rank)");
+        db.execSQL("CREATE TABLE images ("
+                + "item INTEGER NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "path TEXT NOT NULL, "
+                + "PRIMARY KEY (item, position)) WITHOUT ROWID");
+        db.execSQL("CREATE TABLE members ("
+                + "category INTEGER NOT NULL, "
+                + "item INTEGER NOT NULL, "
+                + "PRIMARY KEY (category, item)) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX members_item ON members (item, category)");
+        db.execSQL("CREATE TABLE terms ("
+                + "term TEXT NOT NULL, "
+                + "item INTEGER NOT NULL, "
+                + "title_count INTEGER NOT NULL, "
+                + "description_count INTEGER NOT NULL, "
+                + "PRIMARY KEY (term, item)) WITHOUT ROWID");
+        // Misspelt terms are only corrected to terms found in titles
+        db.execSQL("CREATE INDEX terms_title ON terms (term) WHERE title_count > 0");
+        db.execSQL("CREATE TABLE completions ("
+                + "text TEXT NOT NULL, "
+                + "item INTEGER NOT NULL, "
+                + "PRIMARY KEY (text, item)) WITHOUT ROWID");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The database only holds a copy of the bundled data, so it is simply rebuilt
+        db.execSQL("DROP TABLE IF EXISTS meta");
+        db.execSQL("DROP TABLE IF EXISTS categories");
+        db.execSQL("DROP TABLE IF EXISTS items");
+        db.execSQL("DROP TABLE IF EXISTS images");
+        db.execSQL("DROP TABLE IF EXISTS members");
+        db.execSQL("DROP TABLE IF EXISTS terms");
+        db.execSQL("DROP TABLE IF EXISTS completions");
+        onCreate(db);
+    }
+}
@@ -0,0 +1,65 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A set of changes to apply to a Catalog, read from a patch file.
+ * <p>
+ * Patch files share the layout of data.json, with categories and items keyed by id:
+ * <pre>
+ * {
+ *   "categories": {
+ *     "&lt;id&gt;": { "name": "Gaming" },
+ *     "&lt;id&gt;": null
+ *   },
+ *   "items": {
+ *     "&lt;id&gt;": { "price": "24.99", "categories": ["&lt;id&gt;"] },
+ *     "&lt;id&gt;": null
+ *   }
+ * }
+ * </pre>
+ * An entry whose value is null is removed. Otherwise the entry is added if its id is new, or
+ * modified if it is not. When modifying, fields that are left out (or null) keep their current
+ * value, and a "categories" list replaces every category the item was listed in.
+ *
+ * @author Jackson
+ * @see DataParser#parsePatch()
+ */
+final class CatalogPatch {
+    final Map<UUID, CategoryChange> categories = new LinkedHashMap<>();
+    final Map<UUID, ItemChange> items = new LinkedHashMap<>();
+
+    /**
+     * A change to a single category. Null fields are left unchanged.
+     */
+    static final class CategoryChange {
+        final boolean removed;
+        String name;
+        String description;
+        String image;
+
+        CategoryChange(boolean removed) {
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * A change to a single item. Null fields are left unchanged.
+     */
+    static final class ItemChange {
+        final boolean removed;
+        String title;
+        String description;
+        // In cents
+        Long price;
+        List<String> images;
+        List<UUID> categories;
+
+        ItemChange(boolean removed) {
+            this.removed = removed;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package dev.jacksonc.spilth.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Records the part of a catalog read from a single shard.
+ * <p>
+ * Shards are parsed in parallel, each into its own CatalogShard, and then written into the real
+ * CatalogWriter one after another. Writing a shard only copies references, so it costs far less
+ * than parsing it. Sort orders are ignored, as they only cover the items within one shard.
+ *
+ * @author Jackson
+ * @see ShardedCatalogReader
+ */
+final class CatalogShard implements CatalogWriter {
+    private final List<CategoryEntry> categories = new ArrayList<>();
+    private final List<ItemEntry> items = new ArrayList<>();
+
+    @Override
+    public int addCategory(UUID id, String name, String description, String image) {
+        categories.add(new CategoryEntry(id, name, description, image));
+        return categories.size() - 1;
+    }
+
+    @Override
+    public int addItem(UUID id, String title, String description, long price, List<String> images) {
+        items.add(new ItemEntry(id, title, description, null, 0, 0, price, images));
+        return items.size() - 1;
+    }
+
+    @Override
+    public int addItem(UUID id, String title, ByteBuffer text, int descriptionOffset, int descriptionLength,
+                       long price, List<String> images) {
+        items.add(new ItemEntry(id, title, null, text, descriptionOffset, descriptionLength, price, images));
+        return items.size() - 1;
+    }
+
+    @Override
+    public void addItemToCategory(int item, UUID categoryId) {
+        items.get(item).categoryIds.add(categoryId);
+    }
+
+    @Override
+    public void addItemToCategory(int item, int category) {
+        // Shards can only refer to their own categories by ordinal
+        items.get(item).categoryIds.add(categories.get(category).id);
+    }
+
+    @Override
+    public void setSortOrder(Item.SortOrder order, int[] sorted) {
+        // Only covers this shard, so the final writer sorts every item itself
+    }
+
+    /**
+     * Writes everything recorded from this shard into another writer
+     */
+    void writeTo(CatalogWriter writer) {
+        for (CategoryEntry category : categories) {
+            writer.addCategory(category.id, category.name, category.description, category.image);
+        }
+
+        for (ItemEntry entry : items) {
+            int item;
+            if (entry.text != null) {
+                item = writer.addItem(entry.id, entry.title, entry.text, entry.descriptionOffset,
+                        entry.descriptionLength, entry.price, entry.images);
+            } else {
+                item = writer.addItem(entry.id, entry.title, entry.description, entry.price, entry.images);
+            }
+
+            // Categories may be in a later shard, so they are always resolved by id
+            for (UUID categoryId : entry.categoryIds) {
+                writer.addItemToCategory(item, categoryId);
+            }
+        }
+    }
+
+    private static final class CategoryEntry {
+        final UUID id;
+        final String name;
+        final String description;
+        final String image;
+
+        CategoryEntry(UUID id, String name, String description, String image) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.image = image;
+        }
+    }
+
+    private static final class ItemEntry {
+        final UUID id;
+        final String title;
+        final String description;
+        final ByteBuffer text;
+        final int descriptionOffset;
+        final int descriptionLength;
+        final long price;
+        final List<String> images;
+        final List<UUID> categoryIds = new ArrayList<>(2);
+
+        ItemEntry(UUID id, String title, String description, ByteBuffer text, int descriptionOffset,
+                  int descriptionLength, long price, List<String> images) {
+            this.id = id;
+            this.title = title;
+            this.description = description;
+            this.text = text;
+            this.descriptionOffset = descriptionOffset;
+            this.descriptionLength = descriptionLength;
+            this.price = price;
+            this.images = images;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dev.jacksonc.spilth.data;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Receives the contents of a catalog as it is read from a data source.
+ * <p>
+ * Entries are given ordinals in the order they are added. Items may be listed in categories
+ * by id before those categories have been added; writers resolve them once everything is read.
+ *
+ * @author Jackson
+ * @see DataParser
+ * @see BinaryCatalogReader
+ */
+interface CatalogWriter {
+    /**
+     * Adds a category
+     *
+     * @return the ordinal of the category
+     */
+    int addCategory(UUID id, String name, String description, String image);
+
+    /**
+     * Adds an item
+     *
+     * @param price the price of the item in cents
+     * @return the ordinal of the item
+     */
+    int addItem(UUID id, String title, String description, long price, List<String> images);
+
+    /**
+     * Adds an item whose description is still encoded in the data source, so that writers can
+     * leave it there until it is read
+     *
+     * @param text              a buffer holding the description as UTF-8, which must not change
+     * @param descriptionOffset the position of the description within the buffer
+     * @param descriptionLength the length of the description in bytes, or TextStore.NO_TEXT
+     * @param price             the price of the item in cents
+     * @return the ordinal of the item
+     */
+    int addItem(UUID id, String title, ByteBuffer text, int descriptionOffset, int descriptionLength,
+                long price, List<String> images);
+
+    /**
+     * Lists an item in a category that may not have been added yet
+     *
+     * @param item       the ordinal of the item
+     * @param categoryId the uuid of the category
+     */
+    void addItemToCategory(int item, UUID categoryId);
+
+    /**
+     * Lists an item in a category
+     *
+     * @param item     the ordinal of the item
+     * @param category the ordinal of the category
+     */
+    void addItemToCategory(int item, int category);
+
+    /**
+     * Provides a precomputed sort order for the items
+     *
+     * @param order  the order that the items are sorted by
+     * @param sorted the ordinal of every item, in sorted order
+     */
+    void setSortOrder(Item.SortOrder order, int[] sorted);
+}
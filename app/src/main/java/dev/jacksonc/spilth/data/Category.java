@@ -1,6 +1,7 @@
 package dev.jacksonc.spilth.data;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -9,16 +10,12 @@ import java.util.UUID;
  * @author Jackson
  */
 public class Category {
-    private final UUID id;
-    private final String name;
-    private final String description;
-    private final String imagePath;
-
-    protected Category(UUID id, String name, String description, String imagePath) {
-        this.id = id;
-        this.name = name;
-        this.description = description;
-        this.imagePath = imagePath;
+    private final Catalog catalog;
+    private final int ordinal;
+
+    protected Category(Catalog catalog, int ordinal) {
+        this.catalog = catalog;
+        this.ordinal = ordinal;
     }
 
     /**
@@ -50,23 +47,32 @@ public class Category {
 
     /**
      * Returns all items inside this category
+     * <p>
+     * The list is immutable and ordered as in the catalog.
      *
      * @see Item
      */
-    public Collection<Item> getItems() {
-        return DataProvider.getInstance().getItems(this.id);
+    public List<Item> getItems() {
+        return catalog.getItems(ordinal);
+    }
+
+    /**
+     * Returns the ordinal of this category within its catalog snapshot
+     */
+    int getOrdinal() {
+        return ordinal;
     }
 
     public UUID getId() {
-        return id;
+        return catalog.getCategoryId(ordinal);
     }
 
     public String getName() {
-        return name;
+        return catalog.getName(ordinal);
     }
 
     public String getDescription() {
-        return description;
+        return catalog.getCategoryDescription(ordinal);
     }
 
     public boolean hasImage(){
@@ -79,6 +85,36 @@ public class Category {
      * Paths are relative to asset directory.
      */
     public String getImagePath() {
-        return imagePath;
+        return catalog.getCategoryImage(ordinal);
+    }
+
+    /**
+     * Categories are equal if they have the same id, even if they come from different catalog snapshots
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Category)) {
+            return false;
+        }
+
+        // Within a snapshot every id has its own ordinal, otherwise the ids are compared
+        Category other = (Category) o;
+        if (catalog == other.catalog) {
+            return ordinal == other.ordinal;
+        }
+        return catalog.getCategoryIdMost(ordinal) == other.catalog.getCategoryIdMost(other.ordinal)
+                && catalog.getCategoryIdLeast(ordinal) == other.catalog.getCategoryIdLeast(other.ordinal);
+    }
+
+    /**
+     * Returns the same hash code as the id, without creating a UUID
+     */
+    @Override
+    public int hashCode() {
+        long bits = catalog.getCategoryIdMost(ordinal) ^ catalog.getCategoryIdLeast(ordinal);
+        return (int) (bits >> 32) ^ (int) bits;
     }
 }
@@ -0,0 +1,240 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Completes partly typed text to item titles or category names.
+ * <p>
+ * Every text is folded the way the Tokenizer folds it, with its terms separated by single spaces,
+ * and indexed at the start of each of its words, so "mou" completes to "PS/2 Mouse". The word
+ * starts are kept sorted by the folded text that follows them, which flattens a prefix trie into
+ * an array: the texts with a prefix are a contiguous run found by one binary search. Nothing but
+ * the run is visited, so a completion costs the same for any size of catalog.
+ * <p>
+ * Word starts are stored as offsets into the folded texts rather than as strings of their own,
+ * so the index takes two ints per word.
+ *
+ * @author Jackson
+ * @see SearchEngine
+ */
+final class Completions {
+    // Stop looking through a run of duplicate texts after this many words per completion
+    private static final int MAX_SCANNED_PER_RESULT = 16;
+
+    // The text each ordinal completes to, and the same text folded, or null for removed ordinals
+    private final String[] texts;
+    private final String[] folded;
+    // The ordinal in the upper 32 bits and the offset of a word start in the lower 32 bits,
+    // sorted by the folded text from that offset on
+    private final long[] starts;
+
+    private Completions(String[] texts, String[] folded, long[] starts) {
+        this.texts = texts;
+        this.folded = folded;
+        this.starts = starts;
+    }
+
+    /**
+     * Indexes the start of every word of some texts
+     *
+     * @param texts the text of each ordinal, or null for ordinals that have been removed
+     */
+    static Completions of(String[] texts) {
+        String[] folded = new String[texts.length];
+        List<Long> starts = new ArrayList<>();
+        for (int ordinal = 0; ordinal < texts.length; ordinal++) {
+            folded[ordinal] = index(texts[ordinal], ordinal, starts);
+        }
+        return new Completions(texts, folded, sort(starts, folded));
+    }
+
+    /**
+     * Returns the index after some texts have changed, sharing the entries of every other text
+     *
+     * @param changed the ordinals whose text changed, or that were added or removed, ascending
+     * @param texts   the new text of each changed ordinal, or null if it was removed
+     * @param size    the number of ordinals
+     */
+    Completions update(int[] changed, String[] texts, int size) {
+        String[] newTexts = Arrays.copyOf(this.texts, size);
+        String[] newFolded = Arrays.copyOf(this.folded, size);
+        List<Long> added = new ArrayList<>();
+        for (int i = 0; i < changed.length; i++) {
+            newTexts[changed[i]] = texts[i];
+            newFolded[changed[i]] = index(texts[i], changed[i], added);
+        }
+        long[] resorted = sort(added, newFolded);
+
+        long[] merged = new long[starts.length + resorted.length];
+        int count = 0;
+        int j = 0;
+        for (long start : starts) {
+            if (Arrays.binarySearch(changed, ordinal(start)) >= 0) {
+                continue;
+            }
+            while (j < resorted.length && compare(newFolded, resorted[j], start) < 0) {
+                merged[count++] = resorted[j++];
+            }
+            merged[count++] = start;
+        }
+        while (j < resorted.length) {
+            merged[count++] = resorted[j++];
+        }
+        return new Completions(newTexts, newFolded, Arrays.copyOf(merged, count));
+    }
+
+    /**
+     * Returns a text folded the way it is indexed, from the start of each of its words
+     */
+    static List<String> wordStarts(String text) {
+        List<String> wordStarts = new ArrayList<>();
+        List<Long> starts = new ArrayList<>();
+        String folded = index(text, 0, starts);
+        for (long start : starts) {
+            wordStarts.add(folded.substring(offset(start)));
+        }
+        return wordStarts;
+    }
+
+    /**
+     * Folds a query into the form texts are indexed in
+     * <p>
+     * A query ending in a separator has finished its last word, so it only completes to texts
+     * with more words after it.
+     */
+    static String prefix(String query) {
+        List<String> terms = Tokenizer.tokenize(query);
+        if (terms.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder prefix = new StringBuilder(join(terms));
+        int last = query.codePointBefore(query.length());
+        if (!Character.isLetterOrDigit(last)) {
+            prefix.append(' ');
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Adds the texts with a word starting with a prefix, in order of the folded text from that
+     * word on, skipping any already added
+     *
+     * @param prefix      a query folded by {@link #prefix(String)}
+     * @param limit       the size to fill the completions up to
+     * @param completions the completions found so far
+     */
+    void complete(String prefix, int limit, List<String> completions) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(folded[ordinal(starts[middle])], offset(starts[middle]), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int end = (int) Math.min(starts.length, low + (long) limit * MAX_SCANNED_PER_RESULT);
+        for (int i = low; i < end && completions.size() < limit; i++) {
+            int ordinal = ordinal(starts[i]);
+            if (!folded[ordinal].startsWith(prefix, offset(starts[i]))) {
+                break;
+            }
+            if (!completions.contains(texts[ordinal])) {
+                completions.add(texts[ordinal]);
+            }
+        }
+    }
+
+    /**
+     * Adds the start of every word of a text
+     *
+     * @return the folded text, or null if there is no text
+     */
+    private static String index(String text, int ordinal, List<Long> starts) {
+        if (text == null) {
+            return null;
+        }
+
+        String folded = join(Tokenizer.tokenize(text));
+        if (folded.isEmpty()) {
+            return folded;
+        }
+        starts.add(start(ordinal, 0));
+        for (int i = folded.indexOf(' '); i >= 0; i = folded.indexOf(' ', i + 1)) {
+            starts.add(start(ordinal, i + 1));
+        }
+        return folded;
+    }
+
+    private static long[] sort(List<Long> starts, String[] folded) {
+        Collections.sort(starts, (a, b) -> compare(folded, a, b));
+
+        long[] sorted = new long[starts.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = starts.get(i);
+        }
+        return sorted;
+    }
+
+    /**
+     * Compares the folded text from two word starts, breaking ties by ordinal
+     */
+    private static int compare(String[] folded, long a, long b) {
+        String textA = folded[ordinal(a)];
+        String textB = folded[ordinal(b)];
+        int i = offset(a);
+        int j = offset(b);
+        while (i < textA.length() && j < textB.length()) {
+            int difference = textA.charAt(i++) - textB.charAt(j++);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        int difference = (textA.length() - i) - (textB.length() - j);
+        return difference != 0 ? difference : Integer.compare(ordinal(a), ordinal(b));
+    }
+
+    /**
+     * Compares the folded text from a word start with a prefix, as String.compareTo would
+     */
+    private static int compare(String text, int offset, String prefix) {
+        int i = offset;
+        int j = 0;
+        while (i < text.length() && j < prefix.length()) {
+            int difference = text.charAt(i++) - prefix.charAt(j++);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (text.length() - i) - (prefix.length() - j);
+    }
+
+    private static String join(List<String> terms) {
+        StringBuilder joined = new StringBuilder();
+        for (String term : terms) {
+            if (joined.length() > 0) {
+                joined.append(' ');
+            }
+            joined.append(term);
+        }
+        return joined.toString();
+    }
+
+    private static long start(int ordinal, int offset) {
+        return (long) ordinal << 32 | offset;
+    }
+
+    private static int ordinal(long start) {
+        return (int) (start >>> 32);
+    }
+
+    private static int offset(long start) {
+        return (int) start;
+    }
+}
@@ -1,21 +1,28 @@
 package dev.jacksonc.spilth.data;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 /**
  * Provides the ability to parse a JSON data file and transform it into data classes.
+ * <p>
+ * The file is read token by token using a pull parser. Each Item and Category is handed to
+ * the CatalogWriter as soon as it has been read, so the data is only materialised once.
  *
  * @author Jackson
  */
 public class DataParser {
-    private final Gson parser;
-    private final Reader reader;
+    private final JsonReader reader;
 
 
     /**
@@ -24,68 +31,247 @@ public class DataParser {
      * @param reader the Reader that contains the JSON data
      */
     DataParser(Reader reader) {
-        this.parser = new Gson();
-        this.reader = reader;
+        this.reader = new JsonReader(reader);
     }
 
     /**
-     * Parses the data into DataFormat
+     * Parses the data, adding every category, item and category index to the writer
      *
-     * @return the parsed data
+     * @param writer the CatalogWriter to populate
      */
-    public DataFormat parse() {
-        return this.parser.fromJson(this.reader, DataFormat.class);
+    public void parse(CatalogWriter writer) {
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("categories")) {
+                    parseCategories(writer);
+                } else if (name.equals("items")) {
+                    parseItems(writer);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | IllegalArgumentException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
     }
 
-    protected static class CategoryItem {
-        private String name;
-        private String description;
-        private String image;
-
-        public String getName() {
-            return name;
+    /**
+     * Parses the data as a catalog patch
+     *
+     * @return the changes listed by the patch
+     * @see CatalogPatch
+     */
+    CatalogPatch parsePatch() {
+        CatalogPatch patch = new CatalogPatch();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("categories")) {
+                    parseCategoryChanges(patch);
+                } else if (name.equals("items")) {
+                    parseItemChanges(patch);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | IllegalArgumentException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
         }
+        return patch;
+    }
 
-        public String getDescription() {
-            return description;
-        }
+    private void parseCategories(CatalogWriter writer) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            UUID id = UUID.fromString(reader.nextName());
+            String name = null;
+            String description = null;
+            String image = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        name = nextString();
+                        break;
+                    case "description":
+                        description = nextString();
+                        break;
+                    case "image":
+                        image = nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        public String getImage() {
-            return image;
+            writer.addCategory(id, name, description, image);
         }
+        reader.endObject();
     }
 
-    protected static class DataItem {
-        private List<String> images;
-        private String title;
-        private String description;
-        private BigDecimal price;
-        private List<String> categories;
+    private void parseItems(CatalogWriter writer) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            UUID id = UUID.fromString(reader.nextName());
+            String title = null;
+            String description = null;
+            Long price = null;
+            List<String> images = new ArrayList<>();
+            List<UUID> categories = new ArrayList<>();
 
-        public List<String> getImages() {
-            return images;
-        }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "title":
+                        title = nextString();
+                        break;
+                    case "description":
+                        description = nextString();
+                        break;
+                    case "price":
+                        String value = nextString();
+                        price = value == null ? null : Prices.toCents(new BigDecimal(value));
+                        break;
+                    case "images":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            images.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        break;
+                    case "categories":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            categories.add(UUID.fromString(reader.nextString()));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        public String getTitle() {
-            return title;
-        }
+            if (price == null) {
+                throw new IllegalArgumentException("Item " + id + " has no price");
+            }
 
-        public String getDescription() {
-            return description;
+            int item = writer.addItem(id, title, description, price, images);
+            for (UUID categoryId : categories) {
+                writer.addItemToCategory(item, categoryId);
+            }
         }
+        reader.endObject();
+    }
 
-        public BigDecimal getPrice() {
-            return price;
-        }
+    private void parseCategoryChanges(CatalogPatch patch) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            UUID id = UUID.fromString(reader.nextName());
+
+            // A null entry removes the category
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                patch.categories.put(id, new CatalogPatch.CategoryChange(true));
+                continue;
+            }
+
+            CatalogPatch.CategoryChange change = new CatalogPatch.CategoryChange(false);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        change.name = nextString();
+                        break;
+                    case "description":
+                        change.description = nextString();
+                        break;
+                    case "image":
+                        change.image = nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        public List<String> getCategories() {
-            return categories;
+            patch.categories.put(id, change);
         }
+        reader.endObject();
     }
 
-    protected static class DataFormat {
-        HashMap<UUID, CategoryItem> categories;
-        HashMap<UUID, DataItem> items;
+    private void parseItemChanges(CatalogPatch patch) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            UUID id = UUID.fromString(reader.nextName());
+
+            // A null entry removes the item
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                patch.items.put(id, new CatalogPatch.ItemChange(true));
+                continue;
+            }
+
+            CatalogPatch.ItemChange change = new CatalogPatch.ItemChange(false);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "title":
+                        change.title = nextString();
+                        break;
+                    case "description":
+                        change.description = nextString();
+                        break;
+                    case "price":
+                        String value = nextString();
+                        change.price = value == null ? null : Prices.toCents(new BigDecimal(value));
+                        break;
+                    case "images":
+                        change.images = new ArrayList<>();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            change.images.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        break;
+                    case "categories":
+                        change.categories = new ArrayList<>();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            change.categories.add(UUID.fromString(reader.nextString()));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            patch.items.put(id, change);
+        }
+        reader.endObject();
     }
 
+    /**
+     * Reads a string (or number as a string), returning null for JSON nulls
+     */
+    private String nextString() throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
 }
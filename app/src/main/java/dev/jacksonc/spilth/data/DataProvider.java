@@ -1,21 +1,28 @@
 package dev.jacksonc.spilth.data;
 
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.math.BigDecimal;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import dev.jacksonc.spilth.R;
 import dev.jacksonc.spilth.Spilth;
@@ -24,6 +31,11 @@ import dev.jacksonc.spilth.Spilth;
  * Provides basic access to the database.
  * <p>
  * Singleton class that must be acquired using getInstance().
+ * The catalog is loaded on a background thread, which can be started early using load().
+ * <p>
+ * The catalog is published as an immutable snapshot behind a single atomic reference.
+ * Readers never lock, and a reload builds a new snapshot in the background before swapping it in.
+ * Snapshots are held either in memory or in an on-device database, depending on the Engine.
  * <p>
  * Should not be used by code outside of dev.jacksonc.data package.
  * Specific data classes should be used instead.
@@ -33,102 +45,293 @@ import dev.jacksonc.spilth.Spilth;
  * @see Category
  */
 public class DataProvider {
-    private static DataProvider instance = null;
+    private static final DataProvider instance = new DataProvider();
+    private static final ListeningExecutorService loader =
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("catalog-loader").setDaemon(true).build()));
+
+    private static volatile Source source = Source.BINARY;
+    private static volatile Engine engine = Engine.MEMORY;
+    // Shards to read instead of those compiled into the build, for testing
+    private static volatile File shardDirectory = null;
 
-    // Data
-    private final Map<UUID, Item> items = new HashMap<>();
-    private final Map<UUID, Category> categories = new HashMap<>();
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
 
-    // Indexes
-    private final Map<UUID, Set<UUID>> itemToCategoriesIndex = new HashMap<>();
-    private final Map<UUID, Set<UUID>> categoryToItemsIndex = new HashMap<>();
+    // Guarded by this
+    private ListenableFuture<DataProvider> loading = null;
 
     // Constructor is private as class is a singleton
     private DataProvider() {
     }
 
+    /**
+     * Starts loading the catalog on a background thread, if it has not already been loaded.
+     * <p>
+     * A load that fails is forgotten, so the next call starts loading again.
+     *
+     * @return a future that completes once the catalog is ready
+     */
+    public static ListenableFuture<DataProvider> load() {
+        synchronized (instance) {
+            if (instance.loading == null) {
+                return track(reload());
+            }
+            return instance.loading;
+        }
+    }
+
+    /**
+     * Builds a new snapshot of the catalog on a background thread and swaps it in once it is ready.
+     * <p>
+     * Readers keep seeing the previous snapshot until the swap, so this never blocks the UI.
+     *
+     * @return a future that completes once the new snapshot has been published
+     */
+    public static ListenableFuture<DataProvider> reload() {
+        return loader.submit(() -> {
+            publish(readCatalog());
+            return instance;
+        });
+    }
+
+    /**
+     * Applies a catalog patch on a background thread and swaps in the patched snapshot once it is ready.
+     * <p>
+     * Only the entries listed in the patch are updated, so this is much cheaper than a reload.
+     * Patches are applied in the order they are submitted, after any load that has already started.
+     * A later reload starts again from the full data, dropping any patches applied before it.
+     * If the catalog has never loaded, the patch fails with the error that stopped it loading.
+     *
+     * @param patch a Reader containing the patch, which is closed once it has been read
+     * @return a future that completes once the patched snapshot has been published
+     * @see CatalogPatch
+     */
+    public static ListenableFuture<DataProvider> applyPatch(Reader patch) {
+        synchronized (instance) {
+            ListenableFuture<DataProvider> loading = load();
+            return Futures.submitAsync(() -> {
+                CatalogPatch changes;
+                try (Reader reader = patch) {
+                    changes = new DataParser(reader).parsePatch();
+                }
+
+                // The load ran before this task, so it can only have failed
+                Catalog catalog = instance.catalog.get();
+                if (catalog == null) {
+                    return loading;
+                }
+                publish(catalog.apply(changes));
+                return Futures.immediateFuture(instance);
+            }, loader);
+        }
+    }
+
+    /**
+     * Swaps in a new snapshot, then builds its search index in the background.
+     * <p>
+     * Loading does not wait for the index, only a search made before it is ready does.
+     * The index is skipped if another snapshot has been published in the meantime.
+     */
+    private static void publish(Catalog catalog) {
+        instance.catalog.set(catalog);
+        loader.execute(() -> {
+            if (instance.catalog.get() == catalog) {
+                catalog.getSearchEngine();
+            }
+        });
+    }
+
     /**
      * Returns an instance of DataProvider.
      * <p>
-     * If an instance already exists, it will be returned;
-     * Otherwise a new instance will be created and returned.
+     * If the catalog has already been loaded, this returns immediately;
+     * Otherwise this will block until loading has finished.
      */
     public static DataProvider getInstance() {
-        if (instance == null) {
-            instance = new DataProvider();
-            instance.initialiseData(); // Initialise after creating instance to avoid possible recursion
+        if (instance.catalog.get() == null) {
+            Futures.getUnchecked(load());
         }
         return instance;
     }
 
     /**
-     * Resets instance reference so that the next getInstance() will create a new instance.
+     * Reloads the catalog, e.g. after changing the source.
      * <p>
      * This method is intended to ONLY be used for testing.
+     *
+     * @return a future that completes once the new snapshot has been published
      */
-    public static void reset() {
-        DataProvider.instance = null;
+    public static ListenableFuture<DataProvider> reset() {
+        synchronized (instance) {
+            return track(reload());
+        }
     }
 
-    private void initialiseData() {
-        Context context = Spilth.getContext();
+    /**
+     * Makes a load the current one, and forgets it once it fails unless another load has replaced it
+     */
+    private static ListenableFuture<DataProvider> track(ListenableFuture<DataProvider> loading) {
+        instance.loading = loading;
+        Futures.addCallback(loading, new FutureCallback<DataProvider>() {
+            @Override
+            public void onSuccess(DataProvider result) {
+            }
 
-        InputStream dataStream = context.getResources().openRawResource(R.raw.data);
-        BufferedReader streamReader = new BufferedReader(new InputStreamReader(dataStream, StandardCharsets.UTF_8));
+            @Override
+            public void onFailure(Throwable t) {
+                synchronized (instance) {
+                    if (instance.loading == loading) {
+                        instance.loading = null;
+                    }
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return loading;
+    }
 
-        DataParser parser = new DataParser(streamReader);
-        DataParser.DataFormat data = parser.parse();
+    /**
+     * Sets where the catalog will be loaded from the next time it is loaded.
+     *
+     * @param source the source of the catalog
+     */
+    public static void setSource(Source source) {
+        DataProvider.source = source;
+    }
+
+    /**
+     * Sets a directory of shards to read instead of the shards compiled into the build, the next
+     * time the catalog is loaded from {@link Source#SHARDED}.
+     * <p>
+     * This method is intended to ONLY be used for testing.
+     *
+     * @param directory the directory containing the shards, or null to read the compiled shards
+     */
+    public static void setShardDirectory(File directory) {
+        shardDirectory = directory;
+    }
+
+    /**
+     * Sets which storage engine will hold the catalog the next time it is loaded.
+     *
+     * @param engine the storage engine to use
+     */
+    public static void setEngine(Engine engine) {
+        DataProvider.engine = engine;
+    }
 
-        for (UUID categoryId : data.categories.keySet()) {
-            DataParser.CategoryItem category = data.categories.get(categoryId);
-            if (category != null) {
-                addCategory(categoryId, category);
+    private static Catalog readCatalog() {
+        if (engine == Engine.SQLITE) {
+            Context context = Spilth.getContext();
+            try {
+                return SqliteCatalog.open(CatalogDatabase.get(context), getDataVersion(context), DataProvider::readData);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to populate catalog database", e);
             }
         }
 
-        for (UUID itemId : data.items.keySet()) {
-            DataParser.DataItem item = data.items.get(itemId);
-            assert item != null;
-
-            addItem(itemId, item);
+        if (source == Source.JSON) {
+            return readCachedCatalog();
         }
+        MemoryCatalog.Builder builder = new MemoryCatalog.Builder();
+        readData(builder);
+        return builder.build();
     }
 
-    private void addCategory(UUID id, DataParser.CategoryItem categoryItem) {
-        String categoryName = categoryItem.getName();
-        String categoryDesc = categoryItem.getDescription();
-        String categoryImage = categoryItem.getImage();
+    /**
+     * Reads the JSON data from the post-parse cache, or parses it and then caches the result if
+     * the data has changed since it was last cached
+     */
+    private static Catalog readCachedCatalog() {
+        CatalogCache cache;
+        try {
+            cache = CatalogCache.forResource(Spilth.getContext(), R.raw.data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read catalog data", e);
+        }
+
+        try {
+            MemoryCatalog.Builder cached = new MemoryCatalog.Builder();
+            cache.open().read(cached);
+            return cached.build();
+        } catch (IOException e) {
+            // Not cached yet, or the cache was damaged and has been dropped
+        } catch (RuntimeException e) {
+            // The header was valid but the records were not, so drop the cache for it to be written again
+            cache.delete();
+        }
 
-        Category category = new Category(id, categoryName, categoryDesc, categoryImage);
-        this.categories.put(id, category);
+        // Parsed into a new builder, as a failed read may have left records in the other one
+        MemoryCatalog.Builder builder = new MemoryCatalog.Builder();
+        readData(builder);
+        MemoryCatalog catalog = builder.build();
+
+        // Written after the snapshot is published, so the first launch is not slowed down
+        loader.execute(() -> {
+            try {
+                cache.write(catalog);
+            } catch (IOException e) {
+                // The cache is only an optimisation, so parsing again next launch is fine
+            }
+        });
+        return catalog;
     }
 
-    private void addItem(UUID id, DataParser.DataItem dataItem) {
-        String itemTitle = dataItem.getTitle();
-        String itemDesc = dataItem.getDescription();
-        BigDecimal itemPrice = dataItem.getPrice();
-        List<String> itemImages = dataItem.getImages();
-        List<String> itemCategories = dataItem.getCategories();
+    /**
+     * Reads the bundled data into a writer
+     */
+    private static void readData(CatalogWriter writer) {
+        if (source == Source.BINARY) {
+            try {
+                BinaryCatalogReader reader = BinaryCatalogReader.open(Spilth.getContext().getAssets());
+                reader.read(writer);
+                return;
+            } catch (FileNotFoundException e) {
+                // Catalog was not compiled into this build, fall back to the JSON data
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read binary catalog", e);
+            }
+        } else if (source == Source.SHARDED) {
+            try {
+                File directory = shardDirectory;
+                ShardedCatalogReader reader = directory != null ? ShardedCatalogReader.open(directory)
+                        : ShardedCatalogReader.open(Spilth.getContext().getAssets());
+                reader.read(writer);
+                return;
+            } catch (FileNotFoundException e) {
+                // Catalog was not sharded in this build, fall back to the JSON data
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to list catalog shards", e);
+            }
+        }
 
-        Item item = new Item(id, itemTitle, itemDesc, itemPrice, itemImages);
-        this.items.put(id, item);
+        Context context = Spilth.getContext();
 
-        // Add category indexes
-        for (String categoryId : itemCategories) {
-            addItemToCategory(id, UUID.fromString(categoryId));
-        }
+        InputStream dataStream = context.getResources().openRawResource(R.raw.data);
+        BufferedReader streamReader = new BufferedReader(new InputStreamReader(dataStream, StandardCharsets.UTF_8));
+
+        DataParser parser = new DataParser(streamReader);
+        parser.parse(writer);
     }
 
-    private void addItemToCategory(UUID itemId, UUID categoryId) {
-        if (!itemToCategoriesIndex.containsKey(itemId)) {
-            itemToCategoriesIndex.put(itemId, new HashSet<>());
-        }
-        if (!categoryToItemsIndex.containsKey(categoryId)) {
-            categoryToItemsIndex.put(categoryId, new HashSet<>());
+    /**
+     * Identifies the bundled data, which can only change when the app is installed or updated
+     */
+    private static String getDataVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return String.valueOf(info.lastUpdateTime);
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IllegalStateException(e);
         }
+    }
 
-        Objects.requireNonNull(itemToCategoriesIndex.get(itemId)).add(categoryId);
-        Objects.requireNonNull(categoryToItemsIndex.get(categoryId)).add(itemId);
+    /**
+     * Returns the current snapshot of the catalog.
+     * <p>
+     * Use a single snapshot for operations that need a consistent view across several queries.
+     */
+    Catalog getCatalog() {
+        return catalog.get();
     }
 
     /*
@@ -136,60 +339,53 @@ public class DataProvider {
      */
 
     protected Item getItem(UUID id) {
-        return items.get(id);
+        return getCatalog().getItem(id);
     }
 
     protected Category getCategory(UUID id) {
-        return categories.get(id);
+        return getCatalog().getCategory(id);
     }
 
     protected Collection<Item> getItems() {
-        return items.values();
+        return getCatalog().getItems();
     }
 
     protected Collection<Category> getCategories() {
-        return categories.values();
+        return getCatalog().getCategories();
     }
 
     /**
-     * Gets all Items within a category
-     *
-     * @param categoryId the uuid of the category
-     * @return all items included in provided category
+     * Sources that the catalog can be loaded from
      */
-    protected ArrayList<Item> getItems(UUID categoryId) {
-        ArrayList<Item> categoryItems = new ArrayList<>();
-
-        Set<UUID> itemIds = categoryToItemsIndex.get(categoryId);
-        if (itemIds == null) {
-            return categoryItems;
-        }
-
-        for (UUID id : itemIds) {
-            categoryItems.add(Item.get(id));
-        }
-
-        return categoryItems;
+    public enum Source {
+        /**
+         * The res/raw/data.json resource, parsed at runtime. The parsed catalog is cached in the
+         * app's files directory, so it is only parsed again when the resource changes.
+         */
+        JSON,
+        /**
+         * The binary catalog asset compiled from data.json at build time
+         */
+        BINARY,
+        /**
+         * Shards of data.json split at build time, parsed in parallel across every core.
+         * Only available in builds made with -PcatalogShards=N, which load from it on devices with
+         * more than one core.
+         */
+        SHARDED
     }
 
     /**
-     * Get all categories that a particular Item is listed as.
-     *
-     * @param imageId the uuid of the item
-     * @return all categories listed by the item.
+     * Storage engines that can hold the catalog
      */
-    protected Collection<Category> getCategories(UUID imageId) {
-        ArrayList<Category> itemCategories = new ArrayList<>();
-
-        Set<UUID> categoryIds = itemToCategoriesIndex.get(imageId);
-        if (categoryIds == null) {
-            return itemCategories;
-        }
-
-        for (UUID id : categoryIds) {
-            itemCategories.add(categories.get(id));
-        }
-
-        return itemCategories;
+    public enum Engine {
+        /**
+         * Every item is held in memory, for the fastest access
+         */
+        MEMORY,
+        /**
+         * Items are kept in an on-device database and read as they are needed, for low-RAM devices
+         */
+        SQLITE
     }
 }
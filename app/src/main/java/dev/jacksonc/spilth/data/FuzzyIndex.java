@@ -0,0 +1,201 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the terms that a misspelt term was probably meant to be.
+ * <p>
+ * Each term is split into trigrams, padded at both ends so that the first and last letters take
+ * part in as many trigrams as the rest. A single typo changes at most four trigrams (a swap of
+ * two letters spans four of them), so a term within a few typos of another still shares most of
+ * its trigrams. Only terms sharing enough trigrams are compared, using an edit distance that gives
+ * up once it passes the bound, so the cost depends on the number of similar terms rather than the
+ * size of the vocabulary.
+ *
+ * @author Jackson
+ * @see SearchEngine
+ */
+final class FuzzyIndex {
+    private static final int GRAM = 3;
+    private static final String PADDING = "$$";
+
+    // Shorter terms are too easy to mistake for other short terms
+    private static final int MIN_LENGTH = 4;
+    // Terms at least this long may have two typos, rather than one
+    private static final int TWO_TYPO_LENGTH = 8;
+
+    // Sorted
+    private final String[] terms;
+    // The indexes of the terms containing each trigram, ascending
+    private final Map<String, int[]> grams;
+
+    /**
+     * @param terms the sorted, distinct terms to look for corrections in
+     */
+    FuzzyIndex(String[] terms) {
+        this.terms = terms;
+
+        Map<String, IntList> lists = new HashMap<>();
+        for (int i = 0; i < terms.length; i++) {
+            for (String gram : grams(terms[i])) {
+                IntList list = lists.get(gram);
+                if (list == null) {
+                    list = new IntList();
+                    lists.put(gram, list);
+                }
+                list.add(i);
+            }
+        }
+
+        this.grams = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, IntList> entry : lists.entrySet()) {
+            grams.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Returns the number of typos allowed in a term, depending on its length
+     */
+    static int maxDistance(String term) {
+        if (term.length() < MIN_LENGTH) {
+            return 0;
+        }
+        return term.length() < TWO_TYPO_LENGTH ? 1 : 2;
+    }
+
+    /**
+     * Returns the terms within the allowed number of typos of a term, nearest first
+     */
+    List<String> similar(String term) {
+        List<String> result = new ArrayList<>();
+        int maxDistance = maxDistance(term);
+        if (maxDistance == 0) {
+            return result;
+        }
+
+        // Gather the terms sharing each trigram with this one. Sorting brings together the
+        // repeats of each term, so the trigrams it shares can be counted without a counter for
+        // every term in the vocabulary.
+        List<String> queryGrams = grams(term);
+        IntList touched = new IntList();
+        for (String gram : queryGrams) {
+            int[] list = grams.get(gram);
+            if (list != null) {
+                touched.addAll(list);
+            }
+        }
+        int[] indexes = touched.toArray();
+        Arrays.sort(indexes);
+
+        int minShared = Math.max(1, queryGrams.size() - (GRAM + 1) * maxDistance);
+        List<List<String>> byDistance = new ArrayList<>();
+        for (int d = 0; d <= maxDistance; d++) {
+            byDistance.add(new ArrayList<String>());
+        }
+        for (int start = 0, end; start < indexes.length; start = end) {
+            int index = indexes[start];
+            end = start + 1;
+            while (end < indexes.length && indexes[end] == index) {
+                end++;
+            }
+
+            String candidate = terms[index];
+            if (end - start < minShared || Math.abs(candidate.length() - term.length()) > maxDistance) {
+                continue;
+            }
+            int distance = distance(term, candidate, maxDistance);
+            if (distance <= maxDistance) {
+                byDistance.get(distance).add(candidate);
+            }
+        }
+
+        for (List<String> group : byDistance) {
+            result.addAll(group);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the distinct trigrams of a padded term
+     */
+    private static List<String> grams(String term) {
+        String padded = PADDING + term + PADDING;
+        List<String> result = new ArrayList<>(padded.length() - GRAM + 1);
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            String gram = padded.substring(i, i + GRAM);
+            if (!result.contains(gram)) {
+                result.add(gram);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of insertions, deletions, substitutions and swaps of adjacent letters
+     * needed to turn one term into another, or max + 1 if that is more than max
+     */
+    static int distance(String a, String b, int max) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            // Every later row is at least as far apart as the nearest cell in this one
+            if (rowMin > max) {
+                return max + 1;
+            }
+
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    /**
+     * A growable list of ints
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] added) {
+            if (size + added.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + added.length));
+            }
+            System.arraycopy(added, 0, values, size, added.length);
+            size += added.length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dev.jacksonc.spilth.data;
+
+/**
+ * Compares two ordinals without boxing them, so sort orders can be built and merged as int arrays.
+ *
+ * @author Jackson
+ * @see Catalog#sort(int[], IntComparator)
+ */
+interface IntComparator {
+    /**
+     * Returns a negative number, zero or a positive number as the first ordinal sorts before, with
+     * or after the second
+     */
+    int compare(int a, int b);
+}
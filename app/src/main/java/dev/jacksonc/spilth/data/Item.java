@@ -2,7 +2,9 @@ package dev.jacksonc.spilth.data;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 /**
@@ -11,18 +13,12 @@ import java.util.UUID;
  * @author Jackson
  */
 public class Item implements Comparable<Item> {
-    private final UUID id;
-    private final List<String> images;
-    private final String title;
-    private final String description;
-    private final BigDecimal price;
+    private final Catalog catalog;
+    private final int ordinal;
 
-    protected Item(UUID id, String title, String description, BigDecimal price, List<String> images) {
-        this.id = id;
-        this.title = title;
-        this.description = description;
-        this.price = price;
-        this.images = images;
+    protected Item(Catalog catalog, int ordinal) {
+        this.catalog = catalog;
+        this.ordinal = ordinal;
     }
 
     /**
@@ -52,20 +48,72 @@ public class Item implements Comparable<Item> {
         return DataProvider.getInstance().getItems();
     }
 
+    /**
+     * Returns a Comparator that orders items using a precomputed sort order.
+     * <p>
+     * Comparisons only compare ranks, so no strings or prices are compared while sorting.
+     *
+     * @param order the order to sort items by
+     */
+    public static Comparator<Item> comparator(SortOrder order) {
+        if (order == SortOrder.NAME) {
+            return (a, b) -> Integer.compare(a.getRank(SortOrder.NAME), b.getRank(SortOrder.NAME));
+        } else {
+            return (a, b) -> Integer.compare(a.getRank(SortOrder.PRICE), b.getRank(SortOrder.PRICE));
+        }
+    }
+
+    /**
+     * Returns the catalog snapshot this item belongs to
+     */
+    Catalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Returns the ordinal of this item within its catalog snapshot
+     */
+    int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Returns the position of this item in a precomputed sort order
+     */
+    int getRank(SortOrder order) {
+        return catalog.getRank(order, ordinal);
+    }
+
     public UUID getId() {
-        return id;
+        return catalog.getItemId(ordinal);
     }
 
     public String getTitle() {
-        return title;
+        return catalog.getTitle(ordinal);
     }
 
     public String getDescription() {
-        return description;
+        return catalog.getDescription(ordinal);
     }
 
     public BigDecimal getPrice() {
-        return price;
+        return Prices.toDecimal(catalog.getPrice(ordinal));
+    }
+
+    /**
+     * Returns the price in cents
+     */
+    public long getPriceCents() {
+        return catalog.getPrice(ordinal);
+    }
+
+    /**
+     * Returns the price formatted for display in the default locale, such as "$19.99"
+     * <p>
+     * The string is formatted once and cached, so this is cheap enough to call while binding views.
+     */
+    public String getDisplayPrice() {
+        return catalog.getPriceLabel(ordinal, Locale.getDefault());
     }
 
     /**
@@ -74,7 +122,7 @@ public class Item implements Comparable<Item> {
      * Paths are relative to asset directory.
      */
     public Collection<String> getImages() {
-        return images;
+        return catalog.getImages(ordinal);
     }
 
     /**
@@ -83,16 +131,18 @@ public class Item implements Comparable<Item> {
      * Paths are relative to asset directory.
      */
     public String getThumbnail() {
-        return images.get(0);
+        return catalog.getThumbnail(ordinal);
     }
 
     /**
      * Returns categories listed by this item
+     * <p>
+     * The list is immutable and ordered as in the catalog.
      *
      * @see Category
      */
-    public Collection<Category> getCategories() {
-        return DataProvider.getInstance().getCategories(this.getId());
+    public List<Category> getCategories() {
+        return catalog.getCategories(ordinal);
     }
 
     /**
@@ -123,4 +173,42 @@ public class Item implements Comparable<Item> {
 
         return Integer.compare(thisViews, otherViews);
     }
+
+    /**
+     * Items are equal if they have the same id, even if they come from different catalog snapshots
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Item)) {
+            return false;
+        }
+
+        // Within a snapshot every id has its own ordinal, otherwise the ids are compared
+        Item other = (Item) o;
+        if (catalog == other.catalog) {
+            return ordinal == other.ordinal;
+        }
+        return catalog.getItemIdMost(ordinal) == other.catalog.getItemIdMost(other.ordinal)
+                && catalog.getItemIdLeast(ordinal) == other.catalog.getItemIdLeast(other.ordinal);
+    }
+
+    /**
+     * Returns the same hash code as the id, without creating a UUID
+     */
+    @Override
+    public int hashCode() {
+        long bits = catalog.getItemIdMost(ordinal) ^ catalog.getItemIdLeast(ordinal);
+        return (int) (bits >> 32) ^ (int) bits;
+    }
+
+    /**
+     * Orders that items can be sorted by
+     */
+    public enum SortOrder {
+        NAME,
+        PRICE
+    }
 }
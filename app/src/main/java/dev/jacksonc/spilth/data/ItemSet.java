@@ -0,0 +1,182 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of Items from a single catalog snapshot, backed by a compressed bitmap.
+ * <p>
+ * Sets can be intersected without visiting every item in the catalog, which makes them
+ * suitable for filtering large numbers of items by category.
+ *
+ * @author Jackson
+ */
+public final class ItemSet implements Iterable<Item> {
+    private final Catalog catalog;
+    private final OrdinalBitmap items;
+
+    ItemSet(Catalog catalog, OrdinalBitmap items) {
+        this.catalog = catalog;
+        this.items = items;
+    }
+
+    /**
+     * Returns a set containing every item in the database
+     */
+    public static ItemSet all() {
+        Catalog catalog = DataProvider.getInstance().getCatalog();
+        return new ItemSet(catalog, catalog.getAllItems());
+    }
+
+    /**
+     * Returns a set of the provided items
+     * <p>
+     * Items that are no longer in the catalog are left out.
+     *
+     * @param items the items to include
+     */
+    public static ItemSet of(Collection<Item> items) {
+        Catalog catalog = DataProvider.getInstance().getCatalog();
+
+        int[] ordinals = new int[items.size()];
+        int size = 0;
+        for (Item item : items) {
+            if (item == null) {
+                continue;
+            }
+            if (item.getCatalog() == catalog) {
+                ordinals[size++] = item.getOrdinal();
+            } else {
+                Item current = catalog.getItem(item.getId());
+                if (current != null) {
+                    ordinals[size++] = current.getOrdinal();
+                }
+            }
+        }
+
+        // Items from older snapshots may be the same as others in the collection
+        Arrays.sort(ordinals, 0, size);
+        OrdinalBitmap.Builder builder = new OrdinalBitmap.Builder();
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || ordinals[i] != ordinals[i - 1]) {
+                builder.add(ordinals[i]);
+            }
+        }
+        return new ItemSet(catalog, builder.build());
+    }
+
+    /**
+     * Returns the set of items that are listed in every one of the provided categories
+     * <p>
+     * If no categories are provided, every item is returned.
+     *
+     * @param categories the categories to filter by
+     */
+    public static ItemSet inCategories(Collection<Category> categories) {
+        return inCategories(DataProvider.getInstance().getCatalog(), categories);
+    }
+
+    static ItemSet inCategories(Catalog catalog, Collection<Category> categories) {
+        if (categories.isEmpty()) {
+            return new ItemSet(catalog, catalog.getAllItems());
+        }
+
+        List<OrdinalBitmap> bitmaps = new ArrayList<>(categories.size());
+        for (Category category : categories) {
+            // Categories may have come from an older snapshot
+            Category current = catalog.getCategory(category.getId());
+            if (current == null) {
+                return new ItemSet(catalog, OrdinalBitmap.EMPTY);
+            }
+            bitmaps.add(catalog.getItemBitmap(current.getOrdinal()));
+        }
+
+        // Intersect the smallest sets first so intermediate results stay small
+        Collections.sort(bitmaps, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+
+        OrdinalBitmap result = bitmaps.get(0);
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+            result = result.and(bitmaps.get(i));
+        }
+        return new ItemSet(catalog, result);
+    }
+
+    /**
+     * Returns the items contained in both this set and another
+     *
+     * @param other a set from the same catalog snapshot
+     */
+    public ItemSet and(ItemSet other) {
+        if (other.catalog != catalog) {
+            throw new IllegalArgumentException("Item sets are from different catalog snapshots");
+        }
+        return new ItemSet(catalog, items.and(other.items));
+    }
+
+    public int size() {
+        return items.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public boolean contains(Item item) {
+        return item.getCatalog() == catalog && items.contains(item.getOrdinal());
+    }
+
+    /**
+     * Returns how many of the items are listed in a category, without building the intersection
+     *
+     * @param category the category to count the items of
+     */
+    public int countIn(Category category) {
+        // Categories may have come from an older snapshot
+        Category current = catalog.getCategory(category.getId());
+        if (current == null) {
+            return 0;
+        }
+        return items.andCardinality(catalog.getItemBitmap(current.getOrdinal()));
+    }
+
+    Catalog getCatalog() {
+        return catalog;
+    }
+
+    OrdinalBitmap getBitmap() {
+        return items;
+    }
+
+    /**
+     * Returns an iterator over the items, in catalog order
+     */
+    @Override
+    public Iterator<Item> iterator() {
+        final OrdinalBitmap.OrdinalIterator ordinals = items.iterator();
+
+        return new Iterator<Item>() {
+            @Override
+            public boolean hasNext() {
+                return ordinals.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                if (!ordinals.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return catalog.getItem(ordinals.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
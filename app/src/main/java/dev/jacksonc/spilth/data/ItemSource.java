@@ -0,0 +1,233 @@
+package dev.jacksonc.spilth.data;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * A fixed list of Items that is read one page at a time.
+ * <p>
+ * A source only holds the ordinals of its items within a single catalog snapshot, so creating
+ * one never visits the items themselves. Items are only looked up when their page is requested,
+ * which lets a list of any size be shown as quickly as a short one.
+ * <p>
+ * Pages of a snapshot held in memory are cheap enough to read on any thread. Pages of a snapshot
+ * kept in storage should be loaded in the background, along with every field that will be shown.
+ *
+ * @author Jackson
+ * @see dev.jacksonc.spilth.adaptors.ItemAdaptor
+ */
+public final class ItemSource {
+    /**
+     * The number of items in each page
+     */
+    public static final int PAGE_SIZE = 40;
+
+    private static final ListeningExecutorService pager =
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("item-pager").setDaemon(true).build()));
+
+    private final Catalog catalog;
+    // Must never be modified, as it may be shared with the catalog
+    private final int[] ordinals;
+    // The number of ordinals used from the start of the array
+    private final int count;
+    // The items following those in the array, in catalog order
+    private final OrdinalBitmap rest;
+    private final int size;
+    // Whether the ordinals are read from the end
+    private final boolean reversed;
+
+    private ItemSource(Catalog catalog, int[] ordinals, int count) {
+        this(catalog, ordinals, count, OrdinalBitmap.EMPTY, false);
+    }
+
+    private ItemSource(Catalog catalog, int[] ordinals, int count, OrdinalBitmap rest, boolean reversed) {
+        this.catalog = catalog;
+        this.ordinals = ordinals;
+        this.count = count;
+        this.rest = rest;
+        this.size = count + rest.cardinality();
+        this.reversed = reversed;
+    }
+
+    /**
+     * Returns a source of all items inside a category, in catalog order
+     *
+     * @param category the category to list
+     */
+    public static ItemSource of(Category category) {
+        Catalog catalog = DataProvider.getInstance().getCatalog();
+
+        // Categories may have come from an older snapshot
+        Category current = catalog.getCategory(category.getId());
+        if (current == null) {
+            return new ItemSource(catalog, new int[0], 0);
+        }
+
+        int[] ordinals = catalog.getItemOrdinals(current.getOrdinal());
+        return new ItemSource(catalog, ordinals, ordinals.length);
+    }
+
+    /**
+     * Returns a source of the provided items, in iteration order
+     * <p>
+     * Items that are no longer in the catalog are left out.
+     *
+     * @param items the items to list
+     */
+    public static ItemSource of(Collection<Item> items) {
+        Catalog catalog = DataProvider.getInstance().getCatalog();
+
+        int[] ordinals = new int[items.size()];
+        int size = 0;
+        for (Item item : items) {
+            if (item == null) {
+                continue;
+            }
+            if (item.getCatalog() == catalog) {
+                ordinals[size++] = item.getOrdinal();
+            } else {
+                Item current = catalog.getItem(item.getId());
+                if (current != null) {
+                    ordinals[size++] = current.getOrdinal();
+                }
+            }
+        }
+        return new ItemSource(catalog, ordinals, size);
+    }
+
+    /**
+     * Returns a source of a set of items, sorted in an order
+     * <p>
+     * Items are put in order using the sort orders precomputed by the set's catalog snapshot, so
+     * no two items are ever compared.
+     *
+     * @param items the items to list
+     * @param order the order to list them in
+     */
+    public static ItemSource of(ItemSet items, Item.SortOrder order) {
+        Catalog catalog = items.getCatalog();
+        int[] ordinals = catalog.sort(items.getBitmap(), order);
+        return new ItemSource(catalog, ordinals, ordinals.length);
+    }
+
+    /**
+     * Returns a source of some items in the order given, followed by the rest of a set in catalog
+     * order
+     * <p>
+     * Neither is looked at until a page is read, so a set of any size can follow a short list.
+     *
+     * @param first the ordinals to list first, which are not in rest
+     * @param rest  the items to list after them
+     */
+    static ItemSource of(Catalog catalog, int[] first, OrdinalBitmap rest) {
+        return new ItemSource(catalog, first, first.length, rest, false);
+    }
+
+    /**
+     * Returns a source of the same items in the opposite order, without copying them
+     */
+    public ItemSource reversed() {
+        return new ItemSource(catalog, ordinals, count, rest, !reversed);
+    }
+
+    /**
+     * Returns the total number of items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether reading the fields of the items may read storage, so pages should be loaded
+     * in the background rather than read on the main thread
+     */
+    public boolean isInStorage() {
+        return catalog.isInStorage();
+    }
+
+    /**
+     * Returns the number of pages needed to hold every item
+     */
+    public int getPageCount() {
+        return (size + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Returns the index of the page that an item position falls on
+     */
+    public static int getPageOf(int position) {
+        return position / PAGE_SIZE;
+    }
+
+    /**
+     * Reads the items on a page on the calling thread
+     *
+     * @param page the index of the page
+     * @return an immutable list of the items on the page
+     */
+    public List<Item> readPage(int page) {
+        if (page < 0 || page >= getPageCount()) {
+            return Collections.emptyList();
+        }
+
+        int start = page * PAGE_SIZE;
+        int length = Math.min(PAGE_SIZE, size - start);
+        // The first index the page covers, before any reversal
+        int first = reversed ? size - start - length : start;
+
+        int[] read = new int[length];
+        int fromArray = Math.max(0, Math.min(length, count - first));
+        System.arraycopy(ordinals, Math.min(first, count), read, 0, fromArray);
+        if (fromArray < length) {
+            OrdinalBitmap.OrdinalIterator iterator = rest.iterator(first + fromArray - count);
+            for (int i = fromArray; i < length; i++) {
+                read[i] = iterator.next();
+            }
+        }
+
+        Item[] items = new Item[length];
+        for (int i = 0; i < length; i++) {
+            items[i] = catalog.getItem(read[reversed ? length - 1 - i : i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    /**
+     * Reads the items on a page on a background thread
+     *
+     * @param page the index of the page
+     * @return a future of an immutable list of the items on the page
+     */
+    public ListenableFuture<List<Item>> loadPage(int page) {
+        return pager.submit(() -> readPage(page));
+    }
+
+    /**
+     * Reads the items on a page on a background thread, along with the fields read from each one
+     *
+     * @param page   the index of the page
+     * @param reader reads the fields that are needed from an item
+     * @return a future of an immutable list of what was read from each item on the page
+     */
+    public <T> ListenableFuture<List<T>> loadPage(int page, Function<Item, T> reader) {
+        return pager.submit(() -> {
+            List<Item> items = readPage(page);
+            List<T> read = new ArrayList<>(items.size());
+            for (Item item : items) {
+                read.add(reader.apply(item));
+            }
+            return Collections.unmodifiableList(read);
+        });
+    }
+}
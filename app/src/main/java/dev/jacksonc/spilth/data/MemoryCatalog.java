@@ -0,0 +1,961 @@
+package dev.jacksonc.spilth.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of the catalog, held entirely in memory.
+ * <p>
+ * Snapshots are never modified once built, so they can be read from any thread without locking.
+ * <p>
+ * Item and category fields are stored in column arrays indexed by ordinal and memberships are
+ * stored as int[] adjacency lists, so UUIDs are only needed when looking up an entry from outside
+ * the catalog.
+ * <p>
+ * Item descriptions are only shown on the details screen, so they are kept as UTF-8 in a
+ * TextStore and decoded on demand rather than held as strings. When the catalog is read from the
+ * binary asset they are never copied out of the memory mapped file at all.
+ * <p>
+ * A patch produces a new snapshot that shares every index entry it does not touch with the
+ * snapshot it was applied to. Removed entries keep their ordinal, but are left out of every
+ * list and index, so the ordinals of the remaining entries never change.
+ *
+ * @author Jackson
+ * @see DataProvider
+ * @see CatalogPatch
+ */
+final class MemoryCatalog extends Catalog {
+    private static final int[] NONE = new int[0];
+
+    // Items
+    private final int itemCount;
+    private final long[] itemIdsMost;
+    private final long[] itemIdsLeast;
+    private final String[] titles;
+    private final TextStore text;
+    private final long[] descriptionRefs;
+    private final int[] descriptionLengths;
+    private final long[] prices;
+    private final int[] imageStarts;
+    private final int[] imageEnds;
+    private final List<String> images;
+    private final boolean[] removedItems;
+    private final OrdinalIndex itemIndex;
+
+    // Categories
+    private final int categoryCount;
+    private final long[] categoryIdsMost;
+    private final long[] categoryIdsLeast;
+    private final String[] names;
+    private final String[] categoryDescriptions;
+    private final String[] categoryImages;
+    private final boolean[] removedCategories;
+    private final OrdinalIndex categoryIndex;
+
+    // Indexes
+    private final int[][] itemToCategoriesIndex;
+    private final int[][] categoryToItemsIndex;
+    private final OrdinalBitmap allItems;
+    private final OrdinalBitmap[] categoryBitmaps;
+    private final int[] sortedByName;
+    private final int[] sortedByPrice;
+    private final int[] nameRanks;
+    private final int[] priceRanks;
+
+    // One lightweight view per ordinal
+    private final Item[] items;
+    private final Category[] categories;
+    private final List<Item> itemList;
+    private final List<Category> categoryList;
+    private final List<List<Category>> itemCategories;
+    private final List<List<Item>> categoryItems;
+
+    private MemoryCatalog(Builder builder) {
+        this.itemCount = builder.itemCount;
+        this.itemIdsMost = Arrays.copyOf(builder.itemIdsMost, itemCount);
+        this.itemIdsLeast = Arrays.copyOf(builder.itemIdsLeast, itemCount);
+        this.titles = Arrays.copyOf(builder.titles, itemCount);
+        this.text = builder.finishText();
+        this.descriptionRefs = Arrays.copyOf(builder.descriptionRefs, itemCount);
+        this.descriptionLengths = Arrays.copyOf(builder.descriptionLengths, itemCount);
+        this.prices = Arrays.copyOf(builder.prices, itemCount);
+        this.imageStarts = Arrays.copyOf(builder.imageOffsets, itemCount);
+        this.imageEnds = Arrays.copyOfRange(builder.imageOffsets, 1, itemCount + 1);
+        this.images = Collections.unmodifiableList(Arrays.asList(builder.images.toArray(new String[0])));
+        this.removedItems = new boolean[itemCount];
+        this.itemIndex = new OrdinalIndex(itemIdsMost, itemIdsLeast, itemCount);
+
+        this.categoryCount = builder.categoryCount;
+        this.categoryIdsMost = Arrays.copyOf(builder.categoryIdsMost, categoryCount);
+        this.categoryIdsLeast = Arrays.copyOf(builder.categoryIdsLeast, categoryCount);
+        this.names = Arrays.copyOf(builder.names, categoryCount);
+        this.categoryDescriptions = Arrays.copyOf(builder.categoryDescriptions, categoryCount);
+        this.categoryImages = Arrays.copyOf(builder.categoryImages, categoryCount);
+        this.removedCategories = new boolean[categoryCount];
+        this.categoryIndex = new OrdinalIndex(categoryIdsMost, categoryIdsLeast, categoryCount);
+
+        int[] memberItems = builder.memberItems;
+        int[] memberCategories = builder.resolveMemberCategories(categoryIndex);
+        this.itemToCategoriesIndex = adjacency(memberItems, memberCategories, builder.memberCount, itemCount);
+        this.categoryToItemsIndex = adjacency(memberCategories, memberItems, builder.memberCount, categoryCount);
+
+        this.allItems = OrdinalBitmap.range(itemCount);
+        this.categoryBitmaps = new OrdinalBitmap[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            categoryBitmaps[i] = OrdinalBitmap.of(categoryToItemsIndex[i]);
+        }
+
+        int[] all = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            all[i] = i;
+        }
+        // A precomputed name order is only used if it suits the current language
+        this.sortedByName = builder.sortedByName != null && TitleOrder.isSorted(builder.sortedByName, titles)
+                ? builder.sortedByName : TitleOrder.sort(all, titles);
+        this.sortedByPrice = builder.sortedByPrice != null ? builder.sortedByPrice : sort(all, priceComparator());
+        this.nameRanks = ranks(sortedByName, itemCount);
+        this.priceRanks = ranks(sortedByPrice, itemCount);
+
+        this.items = new Item[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            items[i] = new Item(this, i);
+        }
+        this.categories = new Category[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            categories[i] = new Category(this, i);
+        }
+        this.itemList = live(items, removedItems, new Item[0]);
+        this.categoryList = live(categories, removedCategories, new Category[0]);
+
+        // Membership lists are built once here so that reading them never allocates
+        this.itemCategories = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            itemCategories.add(views(itemToCategoriesIndex[i], categories, new Category[0]));
+        }
+        this.categoryItems = new ArrayList<>(categoryCount);
+        for (int i = 0; i < categoryCount; i++) {
+            categoryItems.add(views(categoryToItemsIndex[i], items, new Item[0]));
+        }
+    }
+
+    /**
+     * Builds a new snapshot by applying a patch to an existing one.
+     * <p>
+     * Adjacency lists, bitmaps and sort orders are only recomputed for the entries the patch touches;
+     * every other entry is shared with the base snapshot.
+     */
+    private MemoryCatalog(MemoryCatalog base, CatalogPatch patch) {
+        // Resolve the ordinal of every changed category, giving new categories the next free ordinals
+        int[] changedCategories = new int[patch.categories.size()];
+        int categoryCount = base.categoryCount;
+        int change = 0;
+        for (Map.Entry<UUID, CatalogPatch.CategoryChange> entry : patch.categories.entrySet()) {
+            int ordinal = base.categoryIndex.get(entry.getKey());
+            if (ordinal < 0 && !entry.getValue().removed) {
+                ordinal = categoryCount++;
+            }
+            changedCategories[change++] = ordinal;
+        }
+
+        this.categoryCount = categoryCount;
+        this.categoryIdsMost = Arrays.copyOf(base.categoryIdsMost, categoryCount);
+        this.categoryIdsLeast = Arrays.copyOf(base.categoryIdsLeast, categoryCount);
+        this.names = Arrays.copyOf(base.names, categoryCount);
+        this.categoryDescriptions = Arrays.copyOf(base.categoryDescriptions, categoryCount);
+        this.categoryImages = Arrays.copyOf(base.categoryImages, categoryCount);
+        this.removedCategories = Arrays.copyOf(base.removedCategories, categoryCount);
+
+        // Categories removed by this patch
+        List<Integer> removedFrom = new ArrayList<>();
+
+        change = 0;
+        for (Map.Entry<UUID, CatalogPatch.CategoryChange> entry : patch.categories.entrySet()) {
+            int ordinal = changedCategories[change++];
+            CatalogPatch.CategoryChange category = entry.getValue();
+
+            if (category.removed) {
+                if (ordinal >= 0 && !removedCategories[ordinal]) {
+                    removedCategories[ordinal] = true;
+                    removedFrom.add(ordinal);
+                }
+                continue;
+            }
+
+            if (ordinal >= base.categoryCount || removedCategories[ordinal]) {
+                // New (or previously removed) categories take every field from the patch
+                categoryIdsMost[ordinal] = entry.getKey().getMostSignificantBits();
+                categoryIdsLeast[ordinal] = entry.getKey().getLeastSignificantBits();
+                names[ordinal] = category.name;
+                categoryDescriptions[ordinal] = category.description;
+                categoryImages[ordinal] = category.image;
+                removedCategories[ordinal] = false;
+            } else {
+                if (category.name != null) {
+                    names[ordinal] = category.name;
+                }
+                if (category.description != null) {
+                    categoryDescriptions[ordinal] = category.description;
+                }
+                if (category.image != null) {
+                    categoryImages[ordinal] = category.image;
+                }
+            }
+        }
+        this.categoryIndex = categoryCount == base.categoryCount ? base.categoryIndex
+                : new OrdinalIndex(base.categoryIndex, categoryIdsMost, categoryIdsLeast, base.categoryCount, categoryCount);
+
+        // Resolve the ordinal of every changed item in the same way
+        int[] changedItems = new int[patch.items.size()];
+        int itemCount = base.itemCount;
+        change = 0;
+        for (Map.Entry<UUID, CatalogPatch.ItemChange> entry : patch.items.entrySet()) {
+            int ordinal = base.itemIndex.get(entry.getKey());
+            if (ordinal < 0 && !entry.getValue().removed) {
+                ordinal = itemCount++;
+            }
+            changedItems[change++] = ordinal;
+        }
+
+        this.itemCount = itemCount;
+        this.itemIdsMost = Arrays.copyOf(base.itemIdsMost, itemCount);
+        this.itemIdsLeast = Arrays.copyOf(base.itemIdsLeast, itemCount);
+        this.titles = Arrays.copyOf(base.titles, itemCount);
+        this.descriptionRefs = Arrays.copyOf(base.descriptionRefs, itemCount);
+        this.descriptionLengths = Arrays.copyOf(base.descriptionLengths, itemCount);
+        this.prices = Arrays.copyOf(base.prices, itemCount);
+        this.imageStarts = Arrays.copyOf(base.imageStarts, itemCount);
+        this.imageEnds = Arrays.copyOf(base.imageEnds, itemCount);
+        this.removedItems = Arrays.copyOf(base.removedItems, itemCount);
+        for (int ordinal = base.itemCount; ordinal < itemCount; ordinal++) {
+            removedItems[ordinal] = true;
+        }
+
+        this.itemToCategoriesIndex = Arrays.copyOf(base.itemToCategoriesIndex, itemCount);
+        for (int ordinal = base.itemCount; ordinal < itemCount; ordinal++) {
+            itemToCategoriesIndex[ordinal] = NONE;
+        }
+
+        // Membership changes, by category. Each list holds item ordinals, negated (minus one) for removals
+        Map<Integer, List<Integer>> memberChanges = new TreeMap<>();
+
+        // Items leave categories that have been removed
+        for (int category : removedFrom) {
+            for (int item : base.categoryToItemsIndex[category]) {
+                itemToCategoriesIndex[item] = without(itemToCategoriesIndex[item], category);
+            }
+            memberChanges.put(category, null);
+        }
+
+        List<String> addedImages = new ArrayList<>();
+        // Descriptions added by the patch are encoded into a new text segment
+        TextStore.Encoder addedText = new TextStore.Encoder();
+        int addedTextSegment = base.text.getSegmentCount();
+        List<Integer> addedItems = new ArrayList<>();
+        List<Integer> removedItemList = new ArrayList<>();
+        List<Integer> renamed = new ArrayList<>();
+        List<Integer> repriced = new ArrayList<>();
+        // Items whose searchable text changed, including every renamed item
+        List<Integer> retexted = new ArrayList<>();
+
+        change = 0;
+        for (Map.Entry<UUID, CatalogPatch.ItemChange> entry : patch.items.entrySet()) {
+            int ordinal = changedItems[change++];
+            CatalogPatch.ItemChange item = entry.getValue();
+
+            int[] memberships;
+            if (item.removed) {
+                if (ordinal < 0 || removedItems[ordinal]) {
+                    continue;
+                }
+                removedItems[ordinal] = true;
+                removedItemList.add(ordinal);
+                renamed.add(ordinal);
+                repriced.add(ordinal);
+                memberships = NONE;
+            } else if (removedItems[ordinal]) {
+                // New (or previously removed) items take every field from the patch
+                if (item.title == null || item.price == null) {
+                    throw new IllegalArgumentException("Added item " + entry.getKey() + " must have a title and price");
+                }
+                itemIdsMost[ordinal] = entry.getKey().getMostSignificantBits();
+                itemIdsLeast[ordinal] = entry.getKey().getLeastSignificantBits();
+                titles[ordinal] = item.title;
+                setDescription(ordinal, item.description, addedText, addedTextSegment);
+                prices[ordinal] = item.price;
+                imageStarts[ordinal] = base.images.size() + addedImages.size();
+                if (item.images != null) {
+                    addedImages.addAll(item.images);
+                }
+                imageEnds[ordinal] = base.images.size() + addedImages.size();
+
+                removedItems[ordinal] = false;
+                addedItems.add(ordinal);
+                renamed.add(ordinal);
+                repriced.add(ordinal);
+                memberships = item.categories != null ? resolve(item.categories) : NONE;
+            } else {
+                if (item.title != null && !item.title.equals(titles[ordinal])) {
+                    titles[ordinal] = item.title;
+                    renamed.add(ordinal);
+                }
+                if (item.description != null) {
+                    setDescription(ordinal, item.description, addedText, addedTextSegment);
+                    retexted.add(ordinal);
+                }
+                if (item.price != null && item.price != prices[ordinal]) {
+                    prices[ordinal] = item.price;
+                    repriced.add(ordinal);
+                }
+                if (item.images != null) {
+                    imageStarts[ordinal] = base.images.size() + addedImages.size();
+                    addedImages.addAll(item.images);
+                    imageEnds[ordinal] = base.images.size() + addedImages.size();
+                }
+                if (item.categories == null) {
+                    continue;
+                }
+                memberships = resolve(item.categories);
+            }
+
+            // Record which categories the item joins and leaves
+            int[] previous = itemToCategoriesIndex[ordinal];
+            for (int category : previous) {
+                if (Arrays.binarySearch(memberships, category) < 0) {
+                    changes(memberChanges, category).add(-ordinal - 1);
+                }
+            }
+            for (int category : memberships) {
+                if (Arrays.binarySearch(previous, category) < 0) {
+                    changes(memberChanges, category).add(ordinal);
+                }
+            }
+            itemToCategoriesIndex[ordinal] = memberships;
+        }
+
+        this.text = addedText.isEmpty() ? base.text : base.text.with(addedText.finish());
+
+        if (addedImages.isEmpty()) {
+            this.images = base.images;
+        } else {
+            List<String> images = new ArrayList<>(base.images.size() + addedImages.size());
+            images.addAll(base.images);
+            images.addAll(addedImages);
+            this.images = Collections.unmodifiableList(Arrays.asList(images.toArray(new String[0])));
+        }
+        this.itemIndex = itemCount == base.itemCount ? base.itemIndex
+                : new OrdinalIndex(base.itemIndex, itemIdsMost, itemIdsLeast, base.itemCount, itemCount);
+
+        // Only the categories whose members changed get new adjacency lists and bitmaps
+        this.categoryToItemsIndex = Arrays.copyOf(base.categoryToItemsIndex, categoryCount);
+        this.categoryBitmaps = Arrays.copyOf(base.categoryBitmaps, categoryCount);
+        for (int ordinal = base.categoryCount; ordinal < categoryCount; ordinal++) {
+            categoryToItemsIndex[ordinal] = NONE;
+            categoryBitmaps[ordinal] = OrdinalBitmap.EMPTY;
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : memberChanges.entrySet()) {
+            int category = entry.getKey();
+            if (entry.getValue() == null) {
+                categoryToItemsIndex[category] = NONE;
+            } else {
+                categoryToItemsIndex[category] = apply(categoryToItemsIndex[category], entry.getValue());
+            }
+            categoryBitmaps[category] = OrdinalBitmap.of(categoryToItemsIndex[category]);
+        }
+
+        this.allItems = base.allItems.andNot(OrdinalBitmap.of(sorted(removedItemList)))
+                .or(OrdinalBitmap.of(sorted(addedItems)));
+
+        // Sort orders only re-sort the items whose sort key changed, then merge them back in
+        this.sortedByName = merge(base.sortedByName, renamed, allItems, TitleOrder.comparator(titles));
+        this.sortedByPrice = merge(base.sortedByPrice, repriced, allItems, priceComparator());
+        this.nameRanks = ranks(sortedByName, itemCount);
+        this.priceRanks = ranks(sortedByPrice, itemCount);
+
+        // Views belong to a single snapshot, so they are always created afresh
+        this.items = new Item[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            items[i] = new Item(this, i);
+        }
+        this.categories = new Category[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            categories[i] = new Category(this, i);
+        }
+        this.itemList = live(items, removedItems, new Item[0]);
+        this.categoryList = live(categories, removedCategories, new Category[0]);
+
+        this.itemCategories = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            itemCategories.add(views(itemToCategoriesIndex[i], categories, new Category[0]));
+        }
+        this.categoryItems = new ArrayList<>(categoryCount);
+        for (int i = 0; i < categoryCount; i++) {
+            categoryItems.add(views(categoryToItemsIndex[i], items, new Item[0]));
+        }
+
+        // Only the terms of changed items are re-indexed, if the base snapshot has been searched
+        SearchEngine baseEngine = base.getBuiltSearchEngine();
+        if (baseEngine != null) {
+            retexted.addAll(renamed);
+            setSearchEngine(SearchEngine.update(baseEngine, this, sorted(retexted)));
+        }
+    }
+
+    /**
+     * Returns a new snapshot with a patch applied. This snapshot is left unchanged.
+     */
+    @Override
+    MemoryCatalog apply(CatalogPatch patch) {
+        return new MemoryCatalog(this, patch);
+    }
+
+    /**
+     * Builds adjacency lists from a list of (from, to) edges.
+     * <p>
+     * Each list is sorted by ordinal and duplicate edges are removed.
+     */
+    private static int[][] adjacency(int[] from, int[] to, int edges, int size) {
+        int[] degrees = new int[size];
+        for (int i = 0; i < edges; i++) {
+            degrees[from[i]]++;
+        }
+
+        int[][] lists = new int[size][];
+        for (int i = 0; i < size; i++) {
+            lists[i] = new int[degrees[i]];
+            degrees[i] = 0;
+        }
+        for (int i = 0; i < edges; i++) {
+            lists[from[i]][degrees[from[i]]++] = to[i];
+        }
+
+        for (int i = 0; i < size; i++) {
+            lists[i] = distinct(lists[i]);
+        }
+        return lists;
+    }
+
+    /**
+     * Sorts a list of ordinals in place and removes duplicates
+     */
+    private static int[] distinct(int[] list) {
+        Arrays.sort(list);
+
+        int distinct = 0;
+        for (int j = 0; j < list.length; j++) {
+            if (j == 0 || list[j] != list[j - 1]) {
+                list[distinct++] = list[j];
+            }
+        }
+        return distinct == list.length ? list : Arrays.copyOf(list, distinct);
+    }
+
+    private static int[] sorted(List<Integer> ordinals) {
+        int[] array = new int[ordinals.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ordinals.get(i);
+        }
+        return distinct(array);
+    }
+
+    /**
+     * Returns a copy of an adjacency list without one ordinal
+     */
+    private static int[] without(int[] list, int ordinal) {
+        int index = Arrays.binarySearch(list, ordinal);
+        if (index < 0) {
+            return list;
+        }
+
+        int[] result = new int[list.length - 1];
+        System.arraycopy(list, 0, result, 0, index);
+        System.arraycopy(list, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * Returns a copy of an adjacency list with ordinals added and removed
+     *
+     * @param changes ordinals to add, or -ordinal - 1 for ordinals to remove
+     */
+    private static int[] apply(int[] list, List<Integer> changes) {
+        List<Integer> added = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        for (int change : changes) {
+            if (change >= 0) {
+                added.add(change);
+            } else {
+                removed.add(-change - 1);
+            }
+        }
+        int[] additions = sorted(added);
+        int[] removals = sorted(removed);
+
+        int[] result = new int[list.length + additions.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < list.length || j < additions.length) {
+            int next;
+            if (j == additions.length || (i < list.length && list[i] < additions[j])) {
+                next = list[i++];
+            } else if (i == list.length || additions[j] < list[i]) {
+                next = additions[j++];
+            } else {
+                next = list[i++];
+                j++;
+            }
+
+            if (Arrays.binarySearch(removals, next) < 0) {
+                result[size++] = next;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Encodes an item's description into a text segment being added by a patch
+     */
+    private void setDescription(int ordinal, String description, TextStore.Encoder encoder, int segment) {
+        if (description == null) {
+            descriptionRefs[ordinal] = 0;
+            descriptionLengths[ordinal] = TextStore.NO_TEXT;
+        } else {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            descriptionRefs[ordinal] = TextStore.ref(segment, encoder.append(bytes));
+            descriptionLengths[ordinal] = bytes.length;
+        }
+    }
+
+    /**
+     * Resolves category ids to a sorted list of category ordinals
+     */
+    private int[] resolve(List<UUID> ids) {
+        int[] ordinals = new int[ids.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = categoryIndex.get(ids.get(i));
+            if (ordinals[i] < 0 || removedCategories[ordinals[i]]) {
+                throw new IllegalStateException("Item lists unknown category " + ids.get(i));
+            }
+        }
+        return distinct(ordinals);
+    }
+
+    private static List<Integer> changes(Map<Integer, List<Integer>> memberChanges, int category) {
+        List<Integer> changes = memberChanges.get(category);
+        if (changes == null) {
+            changes = new ArrayList<>();
+            memberChanges.put(category, changes);
+        }
+        return changes;
+    }
+
+    private IntComparator priceComparator() {
+        return (a, b) -> Long.compare(prices[a], prices[b]);
+    }
+
+    /**
+     * Computes the rank of every item from a sort order
+     */
+    private static int[] ranks(int[] sorted, int size) {
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks[sorted[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns an immutable list of the views that have not been removed
+     */
+    private static <T> List<T> live(T[] all, boolean[] removed, T[] empty) {
+        T[] list = Arrays.copyOf(empty, all.length);
+        int size = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (!removed[i]) {
+                list[size++] = all[i];
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(size == list.length ? list : Arrays.copyOf(list, size)));
+    }
+
+    /**
+     * Returns an immutable list of the views at each ordinal, in the order the ordinals are given
+     */
+    private static <T> List<T> views(int[] ordinals, T[] all, T[] empty) {
+        if (ordinals.length == 0) {
+            return Collections.emptyList();
+        }
+
+        T[] list = Arrays.copyOf(empty, ordinals.length);
+        for (int i = 0; i < ordinals.length; i++) {
+            list[i] = all[ordinals[i]];
+        }
+        return Collections.unmodifiableList(Arrays.asList(list));
+    }
+
+    /*
+     * Items
+     */
+
+    @Override
+    int getItemCount() {
+        return itemCount;
+    }
+
+    @Override
+    Item getItem(int ordinal) {
+        return items[ordinal];
+    }
+
+    @Override
+    Item getItem(UUID id) {
+        int ordinal = itemIndex.get(id);
+        return ordinal < 0 || removedItems[ordinal] ? null : items[ordinal];
+    }
+
+    @Override
+    List<Item> getItems() {
+        return itemList;
+    }
+
+    /**
+     * Returns a bitmap containing the ordinal of every item that has not been removed
+     */
+    @Override
+    OrdinalBitmap getAllItems() {
+        return allItems;
+    }
+
+    @Override
+    boolean isInStorage() {
+        return false;
+    }
+
+    @Override
+    long getItemIdMost(int ordinal) {
+        return itemIdsMost[ordinal];
+    }
+
+    @Override
+    long getItemIdLeast(int ordinal) {
+        return itemIdsLeast[ordinal];
+    }
+
+    @Override
+    String getTitle(int ordinal) {
+        return titles[ordinal];
+    }
+
+    @Override
+    String getDescription(int ordinal) {
+        return text.get(descriptionRefs[ordinal], descriptionLengths[ordinal]);
+    }
+
+    @Override
+    long getPrice(int ordinal) {
+        return prices[ordinal];
+    }
+
+    @Override
+    List<String> getImages(int ordinal) {
+        return images.subList(imageStarts[ordinal], imageEnds[ordinal]);
+    }
+
+    @Override
+    String getThumbnail(int ordinal) {
+        int offset = imageStarts[ordinal];
+        return offset < imageEnds[ordinal] ? images.get(offset) : null;
+    }
+
+    @Override
+    int getRank(Item.SortOrder order, int ordinal) {
+        if (order == Item.SortOrder.NAME) {
+            return nameRanks[ordinal];
+        } else {
+            return priceRanks[ordinal];
+        }
+    }
+
+    @Override
+    int[] getSortedOrdinals(Item.SortOrder order) {
+        if (order == Item.SortOrder.NAME) {
+            return sortedByName;
+        } else {
+            return sortedByPrice;
+        }
+    }
+
+    /**
+     * Get all categories that a particular Item is listed as.
+     *
+     * @param ordinal the ordinal of the item
+     * @return an immutable list of all categories listed by the item, in catalog order.
+     */
+    @Override
+    List<Category> getCategories(int ordinal) {
+        return itemCategories.get(ordinal);
+    }
+
+    /*
+     * Categories
+     */
+
+    @Override
+    int getCategoryCount() {
+        return categoryCount;
+    }
+
+    @Override
+    Category getCategory(int ordinal) {
+        return categories[ordinal];
+    }
+
+    @Override
+    Category getCategory(UUID id) {
+        int ordinal = categoryIndex.get(id);
+        return ordinal < 0 || removedCategories[ordinal] ? null : categories[ordinal];
+    }
+
+    @Override
+    List<Category> getCategories() {
+        return categoryList;
+    }
+
+    @Override
+    long getCategoryIdMost(int ordinal) {
+        return categoryIdsMost[ordinal];
+    }
+
+    @Override
+    long getCategoryIdLeast(int ordinal) {
+        return categoryIdsLeast[ordinal];
+    }
+
+    @Override
+    String getName(int ordinal) {
+        return names[ordinal];
+    }
+
+    @Override
+    String getCategoryDescription(int ordinal) {
+        return categoryDescriptions[ordinal];
+    }
+
+    @Override
+    String getCategoryImage(int ordinal) {
+        return categoryImages[ordinal];
+    }
+
+    /**
+     * Gets all Items within a category
+     *
+     * @param ordinal the ordinal of the category
+     * @return an immutable list of all items included in provided category, in catalog order
+     */
+    @Override
+    List<Item> getItems(int ordinal) {
+        return categoryItems.get(ordinal);
+    }
+
+    /**
+     * Returns the ordinals of all items within a category, in ascending order
+     * <p>
+     * The array is owned by the catalog and must not be modified.
+     *
+     * @param ordinal the ordinal of the category
+     */
+    @Override
+    int[] getItemOrdinals(int ordinal) {
+        return categoryToItemsIndex[ordinal];
+    }
+
+    /**
+     * Returns a bitmap of the ordinals of all items within a category
+     *
+     * @param ordinal the ordinal of the category
+     */
+    @Override
+    OrdinalBitmap getItemBitmap(int ordinal) {
+        return categoryBitmaps[ordinal];
+    }
+
+    /**
+     * Collects the contents of a new MemoryCatalog as it is read from a data source.
+     * <p>
+     * Entries are given ordinals in the order they are added. A Builder is only used by the
+     * thread loading the catalog, so it does not need to be thread-safe.
+     */
+    static class Builder implements CatalogWriter {
+        private int itemCount = 0;
+        private long[] itemIdsMost = new long[16];
+        private long[] itemIdsLeast = new long[16];
+        private String[] titles = new String[16];
+        private long[] descriptionRefs = new long[16];
+        private int[] descriptionLengths = new int[16];
+        // Segment 0 holds descriptions given as strings, the rest are buffers from the data source
+        private final TextStore.Encoder descriptionText = new TextStore.Encoder();
+        private final List<ByteBuffer> textSources = new ArrayList<>();
+        private long[] prices = new long[16];
+        private int[] imageOffsets = new int[17];
+        private final List<String> images = new ArrayList<>();
+        private int[] sortedByName = null;
+        private int[] sortedByPrice = null;
+
+        private int categoryCount = 0;
+        private long[] categoryIdsMost = new long[4];
+        private long[] categoryIdsLeast = new long[4];
+        private String[] names = new String[4];
+        private String[] categoryDescriptions = new String[4];
+        private String[] categoryImages = new String[4];
+
+        // Memberships as (item ordinal, category) pairs. Categories listed by UUID are
+        // resolved once every category has been added.
+        private int memberCount = 0;
+        private int[] memberItems = new int[16];
+        private int[] memberCategories = new int[16];
+        private UUID[] memberCategoryIds = new UUID[16];
+
+        @Override
+        public int addCategory(UUID id, String name, String description, String image) {
+            if (categoryCount == names.length) {
+                int capacity = categoryCount * 2;
+                categoryIdsMost = Arrays.copyOf(categoryIdsMost, capacity);
+                categoryIdsLeast = Arrays.copyOf(categoryIdsLeast, capacity);
+                names = Arrays.copyOf(names, capacity);
+                categoryDescriptions = Arrays.copyOf(categoryDescriptions, capacity);
+                categoryImages = Arrays.copyOf(categoryImages, capacity);
+            }
+
+            categoryIdsMost[categoryCount] = id.getMostSignificantBits();
+            categoryIdsLeast[categoryCount] = id.getLeastSignificantBits();
+            names[categoryCount] = name;
+            categoryDescriptions[categoryCount] = description;
+            categoryImages[categoryCount] = image;
+            return categoryCount++;
+        }
+
+        @Override
+        public int addItem(UUID id, String title, String description, long price, List<String> images) {
+            int item = addItem(id, title, price, images);
+            if (description == null) {
+                descriptionLengths[item] = TextStore.NO_TEXT;
+            } else {
+                byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+                descriptionRefs[item] = TextStore.ref(0, descriptionText.append(bytes));
+                descriptionLengths[item] = bytes.length;
+            }
+            return item;
+        }
+
+        @Override
+        public int addItem(UUID id, String title, ByteBuffer text, int descriptionOffset, int descriptionLength,
+                           long price, List<String> images) {
+            int item = addItem(id, title, price, images);
+
+            // Sources pass the same buffer for every item, so there are only ever a few to search
+            int source = 0;
+            while (source < textSources.size() && textSources.get(source) != text) {
+                source++;
+            }
+            if (source == textSources.size()) {
+                textSources.add(text);
+            }
+
+            descriptionRefs[item] = TextStore.ref(source + 1, descriptionOffset);
+            descriptionLengths[item] = descriptionLength;
+            return item;
+        }
+
+        private int addItem(UUID id, String title, long price, List<String> images) {
+            if (itemCount == titles.length) {
+                int capacity = itemCount * 2;
+                itemIdsMost = Arrays.copyOf(itemIdsMost, capacity);
+                itemIdsLeast = Arrays.copyOf(itemIdsLeast, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                descriptionRefs = Arrays.copyOf(descriptionRefs, capacity);
+                descriptionLengths = Arrays.copyOf(descriptionLengths, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                imageOffsets = Arrays.copyOf(imageOffsets, capacity + 1);
+            }
+
+            itemIdsMost[itemCount] = id.getMostSignificantBits();
+            itemIdsLeast[itemCount] = id.getLeastSignificantBits();
+            titles[itemCount] = title;
+            prices[itemCount] = price;
+            this.images.addAll(images);
+            imageOffsets[itemCount + 1] = this.images.size();
+            return itemCount++;
+        }
+
+        @Override
+        public void addItemToCategory(int item, UUID categoryId) {
+            addMember(item, -1, categoryId);
+        }
+
+        @Override
+        public void addItemToCategory(int item, int category) {
+            addMember(item, category, null);
+        }
+
+        private void addMember(int item, int category, UUID categoryId) {
+            if (memberCount == memberItems.length) {
+                int capacity = memberCount * 2;
+                memberItems = Arrays.copyOf(memberItems, capacity);
+                memberCategories = Arrays.copyOf(memberCategories, capacity);
+                memberCategoryIds = Arrays.copyOf(memberCategoryIds, capacity);
+            }
+
+            memberItems[memberCount] = item;
+            memberCategories[memberCount] = category;
+            memberCategoryIds[memberCount] = categoryId;
+            memberCount++;
+        }
+
+        private int[] resolveMemberCategories(OrdinalIndex categoryIndex) {
+            for (int i = 0; i < memberCount; i++) {
+                UUID categoryId = memberCategoryIds[i];
+                if (categoryId != null) {
+                    memberCategories[i] = categoryIndex.get(categoryId);
+                    if (memberCategories[i] < 0) {
+                        throw new IllegalStateException("Item lists unknown category " + categoryId);
+                    }
+                }
+            }
+            return memberCategories;
+        }
+
+        private TextStore finishText() {
+            ByteBuffer[] segments = new ByteBuffer[textSources.size() + 1];
+            segments[0] = descriptionText.finish();
+            for (int i = 0; i < textSources.size(); i++) {
+                segments[i + 1] = textSources.get(i);
+            }
+            return new TextStore(segments);
+        }
+
+        @Override
+        public void setSortOrder(Item.SortOrder order, int[] sorted) {
+            if (order == Item.SortOrder.NAME) {
+                sortedByName = sorted;
+            } else {
+                sortedByPrice = sorted;
+            }
+        }
+
+        /**
+         * Builds the Catalog, computing any sort orders that were not provided by the data source
+         *
+         * @throws IllegalArgumentException if two items or two categories have the same id
+         */
+        MemoryCatalog build() {
+            return new MemoryCatalog(this);
+        }
+    }
+}
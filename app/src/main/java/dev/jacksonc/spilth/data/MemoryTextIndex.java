@@ -0,0 +1,287 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * An index of item text held entirely in memory.
+ * <p>
+ * Each term maps to a bitmap of the items containing it, and each item keeps its own sorted
+ * terms with how often each appears, so results can be refined and scored without going back to
+ * the postings. Titles are also indexed for completion.
+ *
+ * @author Jackson
+ * @see SearchEngine
+ */
+final class MemoryTextIndex extends TextIndex {
+    /**
+     * An index of no items, which patches can add items to
+     */
+    static final MemoryTextIndex EMPTY = new MemoryTextIndex(new String[0], new OrdinalBitmap[0],
+            new Document[0], 0, 0, Completions.of(new String[0]));
+
+    // Terms found in item text, sorted, and the items containing each one
+    private final String[] terms;
+    private final OrdinalBitmap[] postings;
+    // The terms of each item, by ordinal, or null for removed items
+    private final Document[] documents;
+    // The total number of terms in all titles and descriptions, for their average lengths
+    private final long titleLength;
+    private final long descriptionLength;
+    // Completions of partly typed item titles
+    private final Completions completions;
+
+    private MemoryTextIndex(String[] terms, OrdinalBitmap[] postings, Document[] documents, long titleLength,
+                            long descriptionLength, Completions completions) {
+        this.terms = terms;
+        this.postings = postings;
+        this.documents = documents;
+        this.titleLength = titleLength;
+        this.descriptionLength = descriptionLength;
+        this.completions = completions;
+    }
+
+    /**
+     * Builds the index of every item in a catalog
+     */
+    static MemoryTextIndex build(Catalog catalog) {
+        final Map<String, Postings> index = new HashMap<>();
+        final Document[] documents = new Document[catalog.getItemCount()];
+        final String[] titles = new String[catalog.getItemCount()];
+        catalog.forEachItemText((ordinal, title, description) -> {
+            documents[ordinal] = Document.of(index, ordinal, title, description);
+            titles[ordinal] = title;
+        });
+
+        String[] terms = sortedTerms(index);
+        OrdinalBitmap[] postings = new OrdinalBitmap[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            postings[i] = OrdinalBitmap.of(index.get(terms[i]).toArray());
+        }
+
+        long titleLength = 0;
+        long descriptionLength = 0;
+        for (Document document : documents) {
+            if (document != null) {
+                titleLength += document.titleLength;
+                descriptionLength += document.descriptionLength;
+            }
+        }
+        return new MemoryTextIndex(terms, postings, documents, titleLength, descriptionLength,
+                Completions.of(titles));
+    }
+
+    /**
+     * Only the terms of changed items are looked at; the postings of every other term are shared.
+     */
+    @Override
+    MemoryTextIndex update(Catalog catalog, int[] changed) {
+        // Terms that may lose an item, and the items each term gains
+        Set<String> touched = new HashSet<>();
+        Map<String, Postings> added = new HashMap<>();
+        Document[] documents = Arrays.copyOf(this.documents, catalog.getItemCount());
+        String[] titles = new String[changed.length];
+        long titleLength = this.titleLength;
+        long descriptionLength = this.descriptionLength;
+        for (int k = 0; k < changed.length; k++) {
+            int ordinal = changed[k];
+            Document previous = documents[ordinal];
+            if (previous != null) {
+                touched.addAll(Arrays.asList(previous.terms));
+                titleLength -= previous.titleLength;
+                descriptionLength -= previous.descriptionLength;
+            }
+
+            Document document = null;
+            if (catalog.getAllItems().contains(ordinal)) {
+                titles[k] = catalog.getTitle(ordinal);
+                document = Document.of(added, ordinal, titles[k], catalog.getDescription(ordinal));
+                titleLength += document.titleLength;
+                descriptionLength += document.descriptionLength;
+            }
+            documents[ordinal] = document;
+        }
+        touched.addAll(added.keySet());
+        OrdinalBitmap changedItems = OrdinalBitmap.of(changed);
+
+        // Merge the new terms into the sorted terms of this index
+        List<String> newTerms = new ArrayList<>();
+        for (String term : added.keySet()) {
+            if (Arrays.binarySearch(this.terms, term) < 0) {
+                newTerms.add(term);
+            }
+        }
+        Collections.sort(newTerms);
+
+        List<String> terms = new ArrayList<>(this.terms.length + newTerms.size());
+        List<OrdinalBitmap> postings = new ArrayList<>(this.terms.length + newTerms.size());
+        int i = 0;
+        int j = 0;
+        while (i < this.terms.length || j < newTerms.size()) {
+            String term;
+            OrdinalBitmap posting;
+            if (j == newTerms.size() || (i < this.terms.length && this.terms[i].compareTo(newTerms.get(j)) < 0)) {
+                term = this.terms[i];
+                posting = this.postings[i++];
+            } else {
+                term = newTerms.get(j++);
+                posting = OrdinalBitmap.EMPTY;
+            }
+
+            if (touched.contains(term)) {
+                posting = posting.andNot(changedItems);
+                Postings gained = added.get(term);
+                if (gained != null) {
+                    posting = posting.or(OrdinalBitmap.of(gained.toArray()));
+                }
+                if (posting.isEmpty()) {
+                    continue;
+                }
+            }
+            terms.add(term);
+            postings.add(posting);
+        }
+
+        return new MemoryTextIndex(terms.toArray(new String[0]), postings.toArray(new OrdinalBitmap[0]),
+                documents, titleLength, descriptionLength,
+                completions.update(changed, titles, catalog.getItemCount()));
+    }
+
+    @Override
+    OrdinalBitmap match(List<String> terms, boolean prefix) {
+        List<OrdinalBitmap> matches = new ArrayList<>();
+        for (String term : terms) {
+            int start = lowerBound(this.terms, term);
+            int end = prefix ? prefixEnd(this.terms, term, start) : exactEnd(this.terms, term, start);
+            matches.addAll(Arrays.asList(postings).subList(start, end));
+        }
+        return OrdinalBitmap.union(matches);
+    }
+
+    @Override
+    boolean contains(String term, boolean prefix) {
+        return contains(terms, term, prefix);
+    }
+
+    /**
+     * Checks the terms of each candidate in turn, so the cost grows with the number of candidates
+     * rather than the number of items containing the term
+     */
+    @Override
+    OrdinalBitmap filter(OrdinalBitmap candidates, String term, boolean prefix) {
+        OrdinalBitmap.Builder result = new OrdinalBitmap.Builder();
+        int visited = 0;
+        for (OrdinalBitmap.OrdinalIterator ordinals = candidates.iterator(); ordinals.hasNext(); ) {
+            // Give up on a search that has been superseded, checking every few thousand items
+            if ((++visited & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+
+            int ordinal = ordinals.next();
+            Document document = ordinal < documents.length ? documents[ordinal] : null;
+            if (document != null && contains(document.terms, term, prefix)) {
+                result.add(ordinal);
+            }
+        }
+        return result.build();
+    }
+
+    @Override
+    Counts count(List<String> terms, boolean prefix, OrdinalBitmap within) {
+        Counts counts = new Counts();
+        int visited = 0;
+        for (OrdinalBitmap.OrdinalIterator ordinals = within.and(match(terms, prefix)).iterator(); ordinals.hasNext(); ) {
+            if ((++visited & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+
+            // A prefix counts every term it starts as a match
+            int ordinal = ordinals.next();
+            Document document = documents[ordinal];
+            int titleCount = 0;
+            int descriptionCount = 0;
+            for (String term : terms) {
+                int start = lowerBound(document.terms, term);
+                int end = prefix ? prefixEnd(document.terms, term, start) : exactEnd(document.terms, term, start);
+                for (int j = start; j < end; j++) {
+                    titleCount += document.frequencies[j] >>> 16;
+                    descriptionCount += document.frequencies[j] & 0xFFFF;
+                }
+            }
+            counts.add(ordinal, titleCount, descriptionCount, document.titleLength, document.descriptionLength);
+        }
+        return counts;
+    }
+
+    @Override
+    long getTitleLength() {
+        return titleLength;
+    }
+
+    @Override
+    long getDescriptionLength() {
+        return descriptionLength;
+    }
+
+    @Override
+    void addTitleTerms(Set<String> vocabulary) {
+        for (Document document : documents) {
+            if (document == null) {
+                continue;
+            }
+            for (int i = 0; i < document.terms.length; i++) {
+                if (document.frequencies[i] >>> 16 != 0) {
+                    vocabulary.add(document.terms[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    void complete(String prefix, int limit, List<String> completions) {
+        this.completions.complete(prefix, limit, completions);
+    }
+
+    /**
+     * The distinct terms of an item, with how often each appears in its title and description
+     */
+    private static final class Document {
+        // Sorted
+        final String[] terms;
+        // The number of times each term appears in the title in the upper 16 bits, and in the
+        // description in the lower 16 bits
+        final int[] frequencies;
+        final int titleLength;
+        final int descriptionLength;
+
+        private Document(String[] terms, int[] frequencies, int titleLength, int descriptionLength) {
+            this.terms = terms;
+            this.frequencies = frequencies;
+            this.titleLength = titleLength;
+            this.descriptionLength = descriptionLength;
+        }
+
+        /**
+         * Splits an item's text into terms, adding the item to the postings of each one
+         */
+        static Document of(Map<String, Postings> index, int ordinal, String title, String description) {
+            Terms counted = Terms.of(title, description);
+            String[] terms = counted.terms;
+            int[] frequencies = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                frequencies[i] = Math.min(counted.titleCounts[i], 0xFFFF) << 16
+                        | Math.min(counted.descriptionCounts[i], 0xFFFF);
+                // Share the string used as the index key
+                terms[i] = add(index, terms[i], ordinal);
+            }
+            return new Document(terms, frequencies, counted.titleLength, counted.descriptionLength);
+        }
+    }
+}
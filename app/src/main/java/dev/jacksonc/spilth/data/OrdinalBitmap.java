@@ -0,0 +1,498 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, compressed set of ordinals.
+ * <p>
+ * Follows the layout of a Roaring bitmap: ordinals are grouped by their upper 16 bits, and each
+ * group is stored either as a sorted array of its lower 16 bits (when sparse) or as a 65536 bit
+ * bitmap (when dense). Intersections work group by group, so their cost depends on the size of
+ * the sets rather than the range of ordinals they cover.
+ *
+ * @author Jackson
+ */
+final class OrdinalBitmap {
+    // Groups with more values than this are stored as bitmaps
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    static final OrdinalBitmap EMPTY = new OrdinalBitmap(new char[0], new Object[0], 0);
+
+    // Upper 16 bits of each group, ascending
+    private final char[] keys;
+    // Either a sorted char[] of lower 16 bits or a long[BITMAP_WORDS] bitmap, per group
+    private final Object[] containers;
+    private final int cardinality;
+
+    private OrdinalBitmap(char[] keys, Object[] containers, int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Creates a bitmap containing every ordinal from 0 (inclusive) to size (exclusive)
+     */
+    static OrdinalBitmap range(int size) {
+        Builder builder = new Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(i);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a bitmap from a sorted array of ordinals
+     */
+    static OrdinalBitmap of(int[] sorted) {
+        Builder builder = new Builder();
+        for (int ordinal : sorted) {
+            builder.add(ordinal);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the union of several bitmaps, merging them in pairs so each ordinal is only copied
+     * a logarithmic number of times
+     */
+    static OrdinalBitmap union(List<OrdinalBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return EMPTY;
+        }
+
+        while (bitmaps.size() > 1) {
+            List<OrdinalBitmap> merged = new ArrayList<>((bitmaps.size() + 1) / 2);
+            for (int i = 0; i + 1 < bitmaps.size(); i += 2) {
+                merged.add(bitmaps.get(i).or(bitmaps.get(i + 1)));
+            }
+            if (bitmaps.size() % 2 == 1) {
+                merged.add(bitmaps.get(bitmaps.size() - 1));
+            }
+            bitmaps = merged;
+        }
+        return bitmaps.get(0);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    boolean contains(int ordinal) {
+        int index = Arrays.binarySearch(keys, (char) (ordinal >>> 16));
+        if (index < 0) {
+            return false;
+        }
+
+        char low = (char) ordinal;
+        Object container = containers[index];
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        } else {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+    }
+
+    /**
+     * Returns the ordinals contained in both this bitmap and another
+     */
+    OrdinalBitmap and(OrdinalBitmap other) {
+        int capacity = Math.min(keys.length, other.keys.length);
+        char[] resultKeys = new char[capacity];
+        Object[] resultContainers = new Object[capacity];
+        int groups = 0;
+        int total = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Object container = and(containers[i], other.containers[j]);
+                int size = size(container);
+                if (size > 0) {
+                    resultKeys[groups] = keys[i];
+                    resultContainers[groups] = container;
+                    groups++;
+                    total += size;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return new OrdinalBitmap(Arrays.copyOf(resultKeys, groups), Arrays.copyOf(resultContainers, groups), total);
+    }
+
+    /**
+     * Returns the ordinals contained in either this bitmap or another
+     */
+    OrdinalBitmap or(OrdinalBitmap other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+
+        Builder builder = new Builder();
+        OrdinalIterator left = iterator();
+        OrdinalIterator right = other.iterator();
+        int a = left.hasNext() ? left.next() : -1;
+        int b = right.hasNext() ? right.next() : -1;
+        while (a >= 0 || b >= 0) {
+            if (b < 0 || (a >= 0 && a < b)) {
+                builder.add(a);
+                a = left.hasNext() ? left.next() : -1;
+            } else if (a < 0 || b < a) {
+                builder.add(b);
+                b = right.hasNext() ? right.next() : -1;
+            } else {
+                builder.add(a);
+                a = left.hasNext() ? left.next() : -1;
+                b = right.hasNext() ? right.next() : -1;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the ordinals contained in this bitmap but not in another
+     */
+    OrdinalBitmap andNot(OrdinalBitmap other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+
+        Builder builder = new Builder();
+        OrdinalIterator ordinals = iterator();
+        while (ordinals.hasNext()) {
+            int ordinal = ordinals.next();
+            if (!other.contains(ordinal)) {
+                builder.add(ordinal);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns how many ordinals are contained in both this bitmap and another, without building the intersection
+     */
+    int andCardinality(OrdinalBitmap other) {
+        int total = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += andCardinality(containers[i], other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns an iterator over the ordinals in ascending order
+     */
+    OrdinalIterator iterator() {
+        return new OrdinalIterator(0);
+    }
+
+    /**
+     * Returns an iterator over the ordinals in ascending order, starting from the one at an index
+     * <p>
+     * Whole groups are skipped by their size, so the cost does not grow with the index.
+     */
+    OrdinalIterator iterator(int index) {
+        return new OrdinalIterator(index);
+    }
+
+    private static int size(Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+
+        int size = 0;
+        for (long word : (long[]) container) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] left = (char[]) a;
+            char[] right = (char[]) b;
+            char[] result = new char[Math.min(left.length, right.length)];
+            int size = 0;
+
+            int i = 0;
+            int j = 0;
+            while (i < left.length && j < right.length) {
+                if (left[i] < right[j]) {
+                    i++;
+                } else if (left[i] > right[j]) {
+                    j++;
+                } else {
+                    result[size++] = left[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] array = (char[]) (a instanceof char[] ? a : b);
+            long[] bitmap = (long[]) (a instanceof char[] ? b : a);
+            char[] result = new char[array.length];
+            int size = 0;
+
+            for (char value : array) {
+                if ((bitmap[value >>> 6] & (1L << value)) != 0) {
+                    result[size++] = value;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        long[] left = (long[]) a;
+        long[] right = (long[]) b;
+        long[] result = new long[BITMAP_WORDS];
+        int size = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            result[i] = left[i] & right[i];
+            size += Long.bitCount(result[i]);
+        }
+
+        // Sparse results are converted back into arrays
+        if (size <= ARRAY_MAX) {
+            char[] array = new char[size];
+            int index = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = result[i];
+                while (word != 0) {
+                    array[index++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+        return result;
+    }
+
+    private static int andCardinality(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] left = (char[]) a;
+            char[] right = (char[]) b;
+            int size = 0;
+
+            int i = 0;
+            int j = 0;
+            while (i < left.length && j < right.length) {
+                if (left[i] < right[j]) {
+                    i++;
+                } else if (left[i] > right[j]) {
+                    j++;
+                } else {
+                    size++;
+                    i++;
+                    j++;
+                }
+            }
+            return size;
+        }
+
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] array = (char[]) (a instanceof char[] ? a : b);
+            long[] bitmap = (long[]) (a instanceof char[] ? b : a);
+            int size = 0;
+
+            for (char value : array) {
+                if ((bitmap[value >>> 6] & (1L << value)) != 0) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        long[] left = (long[]) a;
+        long[] right = (long[]) b;
+        int size = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            size += Long.bitCount(left[i] & right[i]);
+        }
+        return size;
+    }
+
+    /**
+     * Iterates over the ordinals of a bitmap in ascending order without boxing
+     */
+    final class OrdinalIterator {
+        private int group = 0;
+        private int position = 0;
+        private int next = -1;
+
+        private OrdinalIterator(int skip) {
+            while (group < keys.length && skip > 0) {
+                int size = size(containers[group]);
+                if (skip < size) {
+                    position = positionOf(containers[group], skip);
+                    break;
+                }
+                skip -= size;
+                group++;
+            }
+            advance();
+        }
+
+        /**
+         * Returns the position to resume a container from to read its value at an index
+         */
+        private int positionOf(Object container, int index) {
+            if (container instanceof char[]) {
+                return index;
+            }
+
+            long[] bitmap = (long[]) container;
+            int word = 0;
+            while (index >= Long.bitCount(bitmap[word])) {
+                index -= Long.bitCount(bitmap[word++]);
+            }
+            long bits = bitmap[word];
+            for (int i = 0; i < index; i++) {
+                bits &= bits - 1;
+            }
+            return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+
+        boolean hasNext() {
+            return next >= 0;
+        }
+
+        int next() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            int current = next;
+            advance();
+            return current;
+        }
+
+        private void advance() {
+            while (group < keys.length) {
+                int high = keys[group] << 16;
+                Object container = containers[group];
+
+                if (container instanceof char[]) {
+                    char[] array = (char[]) container;
+                    if (position < array.length) {
+                        next = high | array[position++];
+                        return;
+                    }
+                } else {
+                    long[] bitmap = (long[]) container;
+                    while (position < BITMAP_WORDS * 64) {
+                        int word = position >>> 6;
+                        long bits = bitmap[word] & (-1L << position);
+                        if (bits != 0) {
+                            int bit = word * 64 + Long.numberOfTrailingZeros(bits);
+                            position = bit + 1;
+                            next = high | bit;
+                            return;
+                        }
+                        position = (word + 1) * 64;
+                    }
+                }
+
+                group++;
+                position = 0;
+            }
+            next = -1;
+        }
+    }
+
+    /**
+     * Builds an OrdinalBitmap from ordinals added in ascending order
+     */
+    static final class Builder {
+        private char[] keys = new char[4];
+        private Object[] containers = new Object[4];
+        private int groups = 0;
+        private int cardinality = 0;
+
+        // Lower 16 bits of the group currently being added to
+        private char[] current = new char[16];
+        private int currentSize = 0;
+        private int currentKey = -1;
+        private int last = -1;
+
+        /**
+         * Adds an ordinal, which must be greater than any ordinal added before it
+         */
+        Builder add(int ordinal) {
+            if (ordinal <= last) {
+                throw new IllegalArgumentException("Ordinals must be added in ascending order");
+            }
+            last = ordinal;
+
+            int key = ordinal >>> 16;
+            if (key != currentKey) {
+                flush();
+                currentKey = key;
+            }
+
+            if (currentSize == current.length) {
+                current = Arrays.copyOf(current, currentSize * 2);
+            }
+            current[currentSize++] = (char) ordinal;
+            return this;
+        }
+
+        OrdinalBitmap build() {
+            flush();
+            return new OrdinalBitmap(Arrays.copyOf(keys, groups), Arrays.copyOf(containers, groups), cardinality);
+        }
+
+        private void flush() {
+            if (currentSize == 0) {
+                return;
+            }
+
+            Object container;
+            if (currentSize <= ARRAY_MAX) {
+                container = Arrays.copyOf(current, currentSize);
+            } else {
+                long[] bitmap = new long[BITMAP_WORDS];
+                for (int i = 0; i < currentSize; i++) {
+                    bitmap[current[i] >>> 6] |= 1L << current[i];
+                }
+                container = bitmap;
+            }
+
+            if (groups == keys.length) {
+                keys = Arrays.copyOf(keys, groups * 2);
+                containers = Arrays.copyOf(containers, groups * 2);
+            }
+            keys[groups] = (char) currentKey;
+            containers[groups] = container;
+            groups++;
+            cardinality += currentSize;
+            currentSize = 0;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.UUID;
+
+/**
+ * Maps UUIDs to the dense ordinals used inside a Catalog.
+ * <p>
+ * The index is an open addressing hash table over the catalog's own id columns, so it stores
+ * a single int per slot rather than boxed UUIDs and Integers.
+ *
+ * @author Jackson
+ */
+final class OrdinalIndex {
+    private final long[] mostSignificant;
+    private final long[] leastSignificant;
+
+    // Ordinal + 1 of the entry stored in each slot, 0 if the slot is empty
+    private final int[] slots;
+
+    /**
+     * Builds an index over the first size ids
+     *
+     * @param mostSignificant  most significant bits of each id, by ordinal
+     * @param leastSignificant least significant bits of each id, by ordinal
+     * @param size             the number of ids
+     * @throws IllegalArgumentException if two ordinals have the same id
+     */
+    OrdinalIndex(long[] mostSignificant, long[] leastSignificant, int size) {
+        this.mostSignificant = mostSignificant;
+        this.leastSignificant = leastSignificant;
+        this.slots = new int[capacity(size)];
+        insert(0, size);
+    }
+
+    /**
+     * Builds an index over the first size ids by extending an index over fewer of them
+     * <p>
+     * The ids already in the base index must be unchanged. The base index is not modified,
+     * and is only copied slot for slot when it does not need to grow.
+     *
+     * @param base             the index over the first ids
+     * @param mostSignificant  most significant bits of each id, by ordinal
+     * @param leastSignificant least significant bits of each id, by ordinal
+     * @param baseSize         the number of ids in the base index
+     * @param size             the number of ids
+     * @throws IllegalArgumentException if two ordinals have the same id
+     */
+    OrdinalIndex(OrdinalIndex base, long[] mostSignificant, long[] leastSignificant, int baseSize, int size) {
+        this.mostSignificant = mostSignificant;
+        this.leastSignificant = leastSignificant;
+
+        int capacity = capacity(size);
+        if (capacity == base.slots.length) {
+            this.slots = base.slots.clone();
+            insert(baseSize, size);
+        } else {
+            this.slots = new int[capacity];
+            insert(0, size);
+        }
+    }
+
+    // Keep the table at most half full so probe sequences stay short
+    private static int capacity(int size) {
+        return Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    }
+
+    private void insert(int from, int to) {
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            long most = mostSignificant[ordinal];
+            long least = leastSignificant[ordinal];
+            int slot = hash(most, least);
+            while (slots[slot] != 0) {
+                int other = slots[slot] - 1;
+                if (mostSignificant[other] == most && leastSignificant[other] == least) {
+                    throw new IllegalArgumentException("Duplicate id " + new UUID(most, least));
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = ordinal + 1;
+        }
+    }
+
+    /**
+     * Returns the ordinal of an id
+     *
+     * @param id the id to look up
+     * @return the ordinal of the id, or -1 if it is not in the index
+     */
+    int get(UUID id) {
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+
+        int slot = hash(most, least);
+        while (slots[slot] != 0) {
+            int ordinal = slots[slot] - 1;
+            if (mostSignificant[ordinal] == most && leastSignificant[ordinal] == least) {
+                return ordinal;
+            }
+            slot = (slot + 1) & (slots.length - 1);
+        }
+        return -1;
+    }
+
+    private int hash(long most, long least) {
+        long hash = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (slots.length - 1);
+    }
+}
@@ -0,0 +1,99 @@
+package dev.jacksonc.spilth.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Converts and formats prices, which the catalog stores as a whole number of cents.
+ * <p>
+ * Prices only ever have two decimal places, so storing them as a long lets them be compared and
+ * copied without any BigDecimal arithmetic. BigDecimals are only created for callers that ask for
+ * one, and display strings are formatted once per item and locale.
+ *
+ * @author Jackson
+ * @see Item#getPrice()
+ * @see Item#getDisplayPrice()
+ */
+final class Prices {
+    /**
+     * The number of decimal places in a price
+     */
+    static final int SCALE = 2;
+
+    /**
+     * The currency of every price
+     */
+    static final Currency CURRENCY = Currency.getInstance("USD");
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100};
+
+    private Prices() {
+    }
+
+    /**
+     * Converts a price to cents
+     *
+     * @throws IllegalArgumentException if the price has more than two decimal places
+     */
+    static long toCents(BigDecimal price) {
+        try {
+            return price.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Price " + price + " is not a whole number of cents", e);
+        }
+    }
+
+    /**
+     * Converts a price, given as an unscaled value and scale like a BigDecimal, to cents
+     *
+     * @throws IllegalArgumentException if the price has more than two decimal places
+     */
+    static long toCents(long unscaled, int scale) {
+        if (scale >= 0 && scale <= SCALE) {
+            return unscaled * POWERS_OF_TEN[SCALE - scale];
+        }
+        return toCents(BigDecimal.valueOf(unscaled, scale));
+    }
+
+    static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * The display strings of a snapshot's prices in one locale, formatted as each is first needed.
+     * <p>
+     * Prices are formatted as US dollars in the conventions of the locale, such as "$0.49" in the
+     * US or "0,49 $" in Germany.
+     * <p>
+     * Strings are immutable, so a label that is formatted twice by racing threads is harmless and
+     * no locking is needed.
+     */
+    static final class Labels {
+        private final NumberFormat format;
+        private final String[] labels;
+
+        Labels(Locale locale, int itemCount) {
+            this.format = NumberFormat.getCurrencyInstance(locale);
+            format.setCurrency(CURRENCY);
+            format.setMinimumFractionDigits(SCALE);
+            format.setMaximumFractionDigits(SCALE);
+            format.setGroupingUsed(false);
+            this.labels = new String[itemCount];
+        }
+
+        String get(int ordinal, long cents) {
+            String label = labels[ordinal];
+            if (label == null) {
+                // NumberFormat is not thread-safe
+                synchronized (format) {
+                    label = format.format(toDecimal(cents));
+                }
+                labels[ordinal] = label;
+            }
+            return label;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package dev.jacksonc.spilth.data;
+
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Full-text search over the items of a catalog snapshot, backed by an inverted index.
+ * <p>
+ * Item titles and descriptions are split into terms by the Tokenizer, and each term maps to a
+ * bitmap of the items containing it. Category names are indexed separately, mapping to
+ * categories, so an item matches a category name through its category's bitmap instead of
+ * copying the name's terms into every item.
+ * <p>
+ * An item matches a query if it contains every term of the query. The last term also matches
+ * any longer term it is a prefix of, so results keep up while a word is still being typed.
+ * Queries are answered with bitmap lookups and intersections, without visiting every item.
+ * <p>
+ * A term that is not in the index at all is probably misspelt, so it matches the title and
+ * category name terms within a typo or two of it instead, found through a FuzzyIndex.
+ * <p>
+ * Results can be ranked by relevance, scored with BM25 over the title, description and category
+ * names of each item. Matches in titles count for more than matches in category names, which
+ * count for more than matches in descriptions. Only the best results are put in order, using a
+ * bounded heap, so ranking costs little more than visiting each result once.
+ * <p>
+ * While a query is being typed, each new query usually extends the last one and can only match
+ * fewer items. Such queries are answered by refining the previous results against the terms of
+ * each remaining item, so every keystroke costs as much as the surviving results. Partly typed
+ * queries can also be completed to item titles and category names, using Completions.
+ * <p>
+ * Each snapshot has its own index, built when the catalog is loaded. Patches only update the
+ * terms of the items they change. Item text is indexed by a TextIndex, which a catalog kept in
+ * storage keeps in storage too.
+ *
+ * @author Jackson
+ * @see Tokenizer
+ * @see FuzzyIndex
+ * @see Completions
+ * @see TextIndex
+ */
+public final class SearchEngine {
+    // BM25 parameters: how quickly repeated terms stop adding to a score, and how much longer
+    // fields are penalised
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // How much a match in each field counts for
+    private static final float TITLE_BOOST = 3f;
+    private static final float DESCRIPTION_BOOST = 1f;
+    private static final float CATEGORY_BOOST = 2f;
+
+    // The number of recent results kept, so that going back to an earlier query does not search again
+    private static final int RESULT_CACHE_SIZE = 16;
+
+    private final Catalog catalog;
+
+    // The titles and descriptions of items
+    private final TextIndex text;
+
+    // Terms found in category names, sorted, and the categories containing each one
+    private final String[] categoryTerms;
+    private final int[][] categoryPostings;
+    // The sorted, distinct terms of each category's name, by ordinal
+    private final String[][] categoryNameTerms;
+    private final long categoryNameLength;
+
+    // Completions of partly typed category names
+    private final Completions categoryCompletions;
+
+    // Built the first time a term has to be corrected
+    private volatile FuzzyIndex fuzzyIndex = null;
+
+    // Recent results, keyed by the terms of their query and the ids of their filter categories
+    private final LruCache<String, ItemSet> results = new LruCache<>(RESULT_CACHE_SIZE);
+
+    private SearchEngine(Catalog catalog, TextIndex text) {
+        this.catalog = catalog;
+        this.text = text;
+
+        Map<String, TextIndex.Postings> index = new HashMap<>();
+        this.categoryNameTerms = new String[catalog.getCategoryCount()][];
+        String[] names = new String[catalog.getCategoryCount()];
+        long categoryNameLength = 0;
+        for (Category category : catalog.getCategories()) {
+            List<String> tokens = Tokenizer.tokenize(category.getName());
+            for (String term : tokens) {
+                TextIndex.add(index, term, category.getOrdinal());
+            }
+            String[] distinct = new HashSet<>(tokens).toArray(new String[0]);
+            Arrays.sort(distinct);
+            categoryNameTerms[category.getOrdinal()] = distinct;
+            categoryNameLength += distinct.length;
+            names[category.getOrdinal()] = category.getName();
+        }
+        // There are few categories, so their completions are simply built again
+        this.categoryCompletions = Completions.of(names);
+        this.categoryNameLength = categoryNameLength;
+        this.categoryTerms = TextIndex.sortedTerms(index);
+        this.categoryPostings = new int[categoryTerms.length][];
+        for (int i = 0; i < categoryTerms.length; i++) {
+            categoryPostings[i] = index.get(categoryTerms[i]).toArray();
+        }
+    }
+
+    /**
+     * Searches the current catalog for items matching a query
+     *
+     * @param query  the text entered by the user
+     * @param filter categories that every result must be listed in, which may be empty
+     * @return the matching items, or every item in the filter if the query has no terms
+     */
+    public static ItemSet search(String query, Collection<Category> filter) {
+        Catalog catalog = DataProvider.getInstance().getCatalog();
+        SearchEngine engine = catalog.getSearchEngine();
+
+        // Queries with the same terms always have the same results
+        String key = cacheKey(query, filter);
+        ItemSet results = engine.results.get(key);
+        if (results == null) {
+            OrdinalBitmap matches = engine.search(query);
+            results = ItemSet.inCategories(catalog, filter).and(new ItemSet(catalog, matches));
+            engine.results.put(key, results);
+        }
+        return results;
+    }
+
+    /**
+     * Narrows the results of a previous search down to the items matching a longer query.
+     * <p>
+     * Only the previous results are visited, so this is cheaper than a new search when few items
+     * are left. A query that does not extend the previous one may match items the previous
+     * results left out, so it has to be searched for instead.
+     *
+     * @param previous      the results of the previous search
+     * @param previousQuery the query the previous results were found for, where null is the same
+     *                      as an empty query
+     * @param query         the new query, where null is the same as an empty query
+     * @return the matching items, or null if the query does not start with the previous query, has
+     * a misspelt term, or the catalog has changed since the previous search
+     */
+    public static ItemSet refine(ItemSet previous, String previousQuery, String query) {
+        if (previousQuery == null) {
+            previousQuery = "";
+        }
+        if (query == null) {
+            query = "";
+        }
+
+        Catalog catalog = DataProvider.getInstance().getCatalog();
+        if (previous.getCatalog() != catalog || !query.startsWith(previousQuery)) {
+            return null;
+        }
+        if (query.equals(previousQuery)) {
+            return previous;
+        }
+        // Corrected terms may match items that the previous query did not
+        if (catalog.getSearchEngine().needsCorrection(query)) {
+            return null;
+        }
+        return new ItemSet(catalog, catalog.getSearchEngine().refine(previous.getBitmap(), query));
+    }
+
+    /**
+     * Orders the results of a search by how relevant they are to the query
+     * <p>
+     * Only the best results are ranked. The rest follow them in catalog order, as they are
+     * unlikely to be scrolled to.
+     *
+     * @param matches the results of searching for the query
+     * @param query   the query the results were found for
+     * @param limit   the number of results to rank
+     * @return a source of every result, with the best first
+     * @throws CancellationException if the thread is interrupted
+     */
+    public static ItemSource rank(ItemSet matches, String query, int limit) {
+        Catalog catalog = matches.getCatalog();
+        int[] ranked = catalog.getSearchEngine().rank(matches.getBitmap(), query, limit);
+        OrdinalBitmap rest = matches.getBitmap().andNot(OrdinalBitmap.of(sorted(ranked)));
+        return ItemSource.of(catalog, ranked, rest);
+    }
+
+    /**
+     * Completes a partly typed query to the names of categories and the titles of items in the
+     * current catalog, with a word starting with the query
+     *
+     * @param query the text entered by the user
+     * @param limit the most completions to return
+     * @return the completions, category names first
+     */
+    public static List<String> suggest(String query, int limit) {
+        List<String> completions = new ArrayList<>(limit);
+        String prefix = Completions.prefix(query);
+        if (prefix.isEmpty()) {
+            return completions;
+        }
+
+        SearchEngine engine = DataProvider.getInstance().getCatalog().getSearchEngine();
+        engine.categoryCompletions.complete(prefix, limit, completions);
+        engine.text.complete(prefix, limit, completions);
+        return completions;
+    }
+
+    private static String cacheKey(String query, Collection<Category> filter) {
+        StringBuilder key = new StringBuilder();
+        for (String term : Tokenizer.tokenize(query)) {
+            key.append(term).append(' ');
+        }
+
+        // Filters are sets, so their order does not matter
+        List<String> ids = new ArrayList<>(filter.size());
+        for (Category category : filter) {
+            ids.add(category.getId().toString());
+        }
+        Collections.sort(ids);
+        for (String id : ids) {
+            key.append('/').append(id);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Builds the index of every item in a catalog
+     */
+    static SearchEngine build(Catalog catalog) {
+        return new SearchEngine(catalog, catalog.buildTextIndex());
+    }
+
+    /**
+     * Builds the index of a patched catalog from the index of the snapshot it was applied to.
+     * <p>
+     * Only the terms of changed items are looked at. Category names are few, so they are simply
+     * indexed again.
+     *
+     * @param base    the index of the snapshot the patch was applied to
+     * @param catalog the patched snapshot
+     * @param changed the ordinals of items whose text changed, or that were added or removed, in
+     *                ascending order
+     */
+    static SearchEngine update(SearchEngine base, Catalog catalog, int[] changed) {
+        return new SearchEngine(catalog, base.text.update(catalog, changed));
+    }
+
+    /**
+     * Returns the ordinals of the items matching a query
+     */
+    OrdinalBitmap search(String query) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return catalog.getAllItems();
+        }
+
+        List<OrdinalBitmap> matches = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            boolean prefix = i == tokens.size() - 1;
+            matches.add(isIndexed(token, prefix) ? match(token, prefix) : correct(token));
+        }
+
+        // Intersect the smallest sets first so intermediate results stay small
+        Collections.sort(matches, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+
+        OrdinalBitmap result = matches.get(0);
+        for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+            result = result.and(matches.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether any term of a query is not in the index, and will be corrected
+     */
+    private boolean needsCorrection(String query) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!isIndexed(tokens.get(i), i == tokens.size() - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a term, or a longer term starting with it, is in the index
+     */
+    private boolean isIndexed(String term, boolean prefix) {
+        return text.contains(term, prefix) || TextIndex.contains(categoryTerms, term, prefix);
+    }
+
+    /**
+     * Returns the items whose titles or category names contain a term within a few typos of a
+     * misspelt one
+     */
+    private OrdinalBitmap correct(String term) {
+        return match(getFuzzyIndex().similar(term), false);
+    }
+
+    private FuzzyIndex getFuzzyIndex() {
+        FuzzyIndex index = fuzzyIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = fuzzyIndex;
+                if (index == null) {
+                    // Only titles and category names are corrected against, as those are what users
+                    // search for by name
+                    Set<String> vocabulary = new HashSet<>(Arrays.asList(categoryTerms));
+                    text.addTitleTerms(vocabulary);
+                    String[] sorted = vocabulary.toArray(new String[0]);
+                    Arrays.sort(sorted);
+                    index = new FuzzyIndex(sorted);
+                    fuzzyIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the candidates matching a query, narrowing them down one token at a time
+     *
+     * @throws CancellationException if the thread is interrupted
+     */
+    OrdinalBitmap refine(OrdinalBitmap candidates, String query) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        OrdinalBitmap result = candidates;
+        for (int i = 0; i < tokens.size() && !result.isEmpty(); i++) {
+            String token = tokens.get(i);
+            boolean prefix = i == tokens.size() - 1;
+
+            // The categories whose names contain the token are found once, rather than per item
+            OrdinalBitmap inCategories = result.and(OrdinalBitmap.union(itemsIn(categoriesMatching(token, prefix))));
+            result = text.filter(result, token, prefix).or(inCategories);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinals of the best matches for a query, best first
+     *
+     * @throws CancellationException if the thread is interrupted
+     */
+    int[] rank(OrdinalBitmap matches, String query, int limit) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            // Every item is as relevant as every other
+            return new int[0];
+        }
+
+        // Misspelt tokens are scored as the terms they were probably meant to be, as they are searched
+        List<List<String>> alternatives = new ArrayList<>(tokens.size());
+        boolean[] prefixes = new boolean[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            prefixes[i] = i == tokens.size() - 1 && isIndexed(token, true);
+            alternatives.add(isIndexed(token, prefixes[i])
+                    ? Collections.singletonList(token) : getFuzzyIndex().similar(token));
+        }
+
+        // Rarer terms count for more
+        int itemCount = Math.max(1, catalog.getAllItems().cardinality());
+        float[] weights = new float[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            int frequency = match(alternatives.get(i), prefixes[i]).cardinality();
+            weights[i] = (float) Math.log(1 + (itemCount - frequency + 0.5) / (frequency + 0.5));
+        }
+
+        float averageTitle = Math.max(1f, (float) text.getTitleLength() / itemCount);
+        float averageDescription = Math.max(1f, (float) text.getDescriptionLength() / itemCount);
+        float averageCategoryName = Math.max(1f, (float) categoryNameLength / Math.max(1, catalog.getCategories().size()));
+
+        // The categories whose names contain each token, and how much a match in each one counts
+        // for, found once rather than for every item
+        OrdinalBitmap[][] categoryItems = new OrdinalBitmap[tokens.size()][];
+        float[][] categoryWeights = new float[tokens.size()][];
+        for (int i = 0; i < tokens.size(); i++) {
+            int[] categories = categoriesMatching(alternatives.get(i), prefixes[i]);
+            categoryItems[i] = itemsIn(categories).toArray(new OrdinalBitmap[0]);
+            categoryWeights[i] = new float[categories.length];
+            for (int j = 0; j < categories.length; j++) {
+                int nameLength = categoryNameTerms[categories[j]].length;
+                categoryWeights[i][j] = 1 / (1 - B + B * nameLength / averageCategoryName);
+            }
+        }
+
+        // How often each token appears in the text of each match, read in the same order as the
+        // matches are visited
+        TextIndex.Counts[] counts = new TextIndex.Counts[tokens.size()];
+        int[] positions = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            counts[i] = text.count(alternatives.get(i), prefixes[i], matches);
+        }
+
+        TopScores best = new TopScores(Math.min(limit, matches.cardinality()));
+        int visited = 0;
+        for (OrdinalBitmap.OrdinalIterator ordinals = matches.iterator(); ordinals.hasNext(); ) {
+            if ((++visited & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+
+            int ordinal = ordinals.next();
+            float score = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                float textMatches = 0;
+                TextIndex.Counts count = counts[i];
+                int position = positions[i];
+                if (position < count.size() && count.getOrdinal(position) == ordinal) {
+                    float titleNorm = 1 - B + B * count.getTitleLength(position) / averageTitle;
+                    float descriptionNorm = 1 - B + B * count.getDescriptionLength(position) / averageDescription;
+                    textMatches = TITLE_BOOST * count.getTitleCount(position) / titleNorm
+                            + DESCRIPTION_BOOST * count.getDescriptionCount(position) / descriptionNorm;
+                    positions[i]++;
+                }
+
+                float categoryMatches = 0;
+                for (int j = 0; j < categoryItems[i].length; j++) {
+                    if (categoryItems[i][j].contains(ordinal)) {
+                        categoryMatches += categoryWeights[i][j];
+                    }
+                }
+
+                float frequency = textMatches + CATEGORY_BOOST * categoryMatches;
+                score += weights[i] * frequency * (K1 + 1) / (frequency + K1);
+            }
+            best.offer(ordinal, score);
+        }
+        return best.toArray();
+    }
+
+    /**
+     * Returns the items whose text or category names contain a term
+     *
+     * @param prefix whether longer terms starting with the term also match
+     */
+    private OrdinalBitmap match(String term, boolean prefix) {
+        return match(Collections.singletonList(term), prefix);
+    }
+
+    /**
+     * Returns the items whose text or category names contain any of some terms
+     *
+     * @param prefix whether longer terms starting with the terms also match
+     */
+    private OrdinalBitmap match(List<String> terms, boolean prefix) {
+        List<OrdinalBitmap> matches = new ArrayList<>();
+        matches.add(text.match(terms, prefix));
+        matches.addAll(itemsIn(categoriesMatching(terms, prefix)));
+        return OrdinalBitmap.union(matches);
+    }
+
+    /**
+     * Returns the ordinals of the categories whose names contain a term, ascending
+     *
+     * @param prefix whether longer terms starting with the term also match
+     */
+    private int[] categoriesMatching(String term, boolean prefix) {
+        return categoriesMatching(Collections.singletonList(term), prefix);
+    }
+
+    /**
+     * Returns the ordinals of the categories whose names contain any of some terms, ascending
+     *
+     * @param prefix whether longer terms starting with the terms also match
+     */
+    private int[] categoriesMatching(List<String> terms, boolean prefix) {
+        if (terms.size() == 1) {
+            String term = terms.get(0);
+            int start = TextIndex.lowerBound(categoryTerms, term);
+            int end = prefix
+                    ? TextIndex.prefixEnd(categoryTerms, term, start) : TextIndex.exactEnd(categoryTerms, term, start);
+            if (end - start == 1) {
+                return categoryPostings[start];
+            }
+        }
+
+        Set<Integer> categories = new HashSet<>();
+        for (String term : terms) {
+            int start = TextIndex.lowerBound(categoryTerms, term);
+            int end = prefix
+                    ? TextIndex.prefixEnd(categoryTerms, term, start) : TextIndex.exactEnd(categoryTerms, term, start);
+            for (int i = start; i < end; i++) {
+                for (int category : categoryPostings[i]) {
+                    categories.add(category);
+                }
+            }
+        }
+        int[] ordinals = new int[categories.size()];
+        int size = 0;
+        for (int category : categories) {
+            ordinals[size++] = category;
+        }
+        Arrays.sort(ordinals);
+        return ordinals;
+    }
+
+    /**
+     * Returns the bitmap of the items in each of some categories
+     */
+    private List<OrdinalBitmap> itemsIn(int[] categories) {
+        List<OrdinalBitmap> bitmaps = new ArrayList<>(categories.length);
+        for (int category : categories) {
+            bitmaps.add(catalog.getItemBitmap(category));
+        }
+        return bitmaps;
+    }
+
+    private static int[] sorted(int[] ordinals) {
+        int[] sorted = ordinals.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
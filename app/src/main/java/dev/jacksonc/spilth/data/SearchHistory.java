@@ -0,0 +1,204 @@
+package dev.jacksonc.spilth.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import dev.jacksonc.spilth.Spilth;
+
+/**
+ * Remembers the queries the user has searched for, most recent first.
+ * <p>
+ * Queries are written behind: they are held in memory and written to the database a short while
+ * later, on a background thread, in a single transaction. Searching for the same query again
+ * before then only moves it to the front. Once written, only the most recent queries are kept.
+ * <p>
+ * Queries are read from memory and the database together, so a query is suggested as soon as it
+ * has been searched for.
+ *
+ * @author Jackson
+ * @see SearchHistoryDatabase
+ */
+public final class SearchHistory {
+    // The number of queries kept
+    private static final int MAX_QUERIES = 100;
+    // How long queries are held in memory before being written
+    private static final long WRITE_DELAY_MS = 2000;
+
+    private static final ListeningScheduledExecutorService writer =
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("search-history").setDaemon(true).build()));
+
+    private static final Object lock = new Object();
+    // Queries waiting to be written, with the time each was last searched for, oldest first
+    private static final Map<String, Long> pending = new LinkedHashMap<>();
+    // The time the last query was searched for, so that every query has a different time
+    private static long lastTime = 0;
+    private static boolean writeScheduled = false;
+    // Set while the database is waiting to be cleared, so that cleared queries are not read
+    private static boolean clearing = false;
+    // Counts the times the history has been cleared, so a write knows if it was cleared again
+    private static int clears = 0;
+
+    private SearchHistory() {
+    }
+
+    /**
+     * Records a search for a query, writing it to the database a short while later
+     *
+     * @param query the text entered by the user
+     */
+    public static void add(String query) {
+        query = query.trim();
+        if (query.isEmpty()) {
+            return;
+        }
+
+        synchronized (lock) {
+            // Re-inserting moves the query to the end
+            lastTime = Math.max(System.currentTimeMillis(), lastTime + 1);
+            pending.remove(query);
+            pending.put(query, lastTime);
+            if (!writeScheduled) {
+                writeScheduled = true;
+                writer.schedule(SearchHistory::write, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes any queries held in memory now, such as when the app is about to be stopped
+     *
+     * @return a future that completes once they have been written
+     */
+    public static ListenableFuture<?> flush() {
+        return writer.submit(SearchHistory::write);
+    }
+
+    /**
+     * Forgets every query, including those not written yet
+     *
+     * @return a future that completes once the database has been cleared
+     */
+    public static ListenableFuture<?> clear() {
+        synchronized (lock) {
+            pending.clear();
+            clearing = true;
+            clears++;
+        }
+
+        // Writes run one at a time, so queries already being written are cleared by the next one
+        return writer.submit(SearchHistory::write);
+    }
+
+    /**
+     * Returns the most recent queries containing some text, ignoring case
+     *
+     * @param text  the text the queries must contain, or an empty string for every query
+     * @param limit the most queries to return
+     * @return the queries, most recent first
+     */
+    public static List<String> get(String text, int limit) {
+        String lower = text.trim().toLowerCase(Locale.ROOT);
+        List<String> queries = new ArrayList<>(limit);
+        boolean readDatabase;
+        synchronized (lock) {
+            List<String> newest = new ArrayList<>(pending.keySet());
+            for (int i = newest.size() - 1; i >= 0 && queries.size() < limit; i--) {
+                if (newest.get(i).toLowerCase(Locale.ROOT).contains(lower)) {
+                    queries.add(newest.get(i));
+                }
+            }
+            readDatabase = !clearing;
+        }
+        if (!readDatabase || queries.size() == limit) {
+            return queries;
+        }
+
+        // Queries held in memory are newer than any in the database, which may also hold them
+        SQLiteDatabase database = SearchHistoryDatabase.get(Spilth.getContext());
+        String[] selection = {"%" + escape(lower) + "%", String.valueOf(limit + queries.size())};
+        try (Cursor cursor = database.rawQuery("SELECT query FROM queries WHERE query LIKE ? ESCAPE '\\' "
+                + "ORDER BY date DESC LIMIT ?", selection)) {
+            while (queries.size() < limit && cursor.moveToNext()) {
+                String query = cursor.getString(0);
+                if (!queries.contains(query)) {
+                    queries.add(query);
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Clears the database if asked to, then writes the queries held in memory and prunes the
+     * oldest queries, all in one transaction
+     */
+    private static void write() {
+        Map<String, Long> queries;
+        boolean clear;
+        int clearCount;
+        synchronized (lock) {
+            writeScheduled = false;
+            clear = clearing;
+            clearCount = clears;
+            if (!clear && pending.isEmpty()) {
+                return;
+            }
+            queries = new LinkedHashMap<>(pending);
+        }
+
+        SQLiteDatabase database = SearchHistoryDatabase.get(Spilth.getContext());
+        database.beginTransaction();
+        try {
+            if (clear) {
+                database.delete("queries", null, null);
+            }
+            try (SQLiteStatement insert = database.compileStatement(
+                    "INSERT OR REPLACE INTO queries (query, date) VALUES (?, ?)")) {
+                for (Map.Entry<String, Long> entry : queries.entrySet()) {
+                    insert.bindString(1, entry.getKey());
+                    insert.bindLong(2, entry.getValue());
+                    insert.executeInsert();
+                }
+            }
+            database.execSQL("DELETE FROM queries WHERE query NOT IN "
+                    + "(SELECT query FROM queries ORDER BY date DESC LIMIT " + MAX_QUERIES + ")");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // Queries searched for again while writing stay pending, with their new time
+        synchronized (lock) {
+            if (clear && clearCount == clears) {
+                clearing = false;
+            }
+            for (Map.Entry<String, Long> entry : queries.entrySet()) {
+                if (entry.getValue().equals(pending.get(entry.getKey()))) {
+                    pending.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Escapes the wildcards of a LIKE pattern
+     */
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,57 @@
+package dev.jacksonc.spilth.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * The on-device database used by SearchHistory.
+ * <p>
+ * Each query is stored once, with the last time it was searched for, so the oldest queries can
+ * be pruned through an index on that time.
+ *
+ * @author Jackson
+ * @see SearchHistory
+ */
+class SearchHistoryDatabase extends SQLiteOpenHelper {
+    private static final String NAME = "search_history.db";
+    private static final int VERSION = 1;
+
+    // Kept by the recent suggestions provider that SearchProvider used to extend
+    private static final String OLD_NAME = "suggestions.db";
+
+    private static SearchHistoryDatabase instance = null;
+
+    private final Context context;
+
+    private SearchHistoryDatabase(Context context) {
+        super(context, NAME, null, VERSION);
+        this.context = context;
+    }
+
+    /**
+     * Returns the database, opening it if needed
+     */
+    static synchronized SQLiteDatabase get(Context context) {
+        if (instance == null) {
+            instance = new SearchHistoryDatabase(context.getApplicationContext());
+        }
+        return instance.getWritableDatabase();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE queries ("
+                + "query TEXT PRIMARY KEY, "
+                + "date INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX queries_date ON queries (date)");
+
+        context.deleteDatabase(OLD_NAME);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS queries");
+        onCreate(db);
+    }
+}
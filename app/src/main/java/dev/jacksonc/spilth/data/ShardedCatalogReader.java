@@ -0,0 +1,144 @@
+package dev.jacksonc.spilth.data;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Provides the ability to read a catalog that has been split into several shard files, parsing
+ * the shards in parallel.
+ * <p>
+ * Each shard is a JSON file with the same layout as data.json, generated at build time by the
+ * shardCatalog Gradle task (see app/catalog.gradle). Items are partitioned between the shards by
+ * id range, so the shards can be parsed independently on a fork/join pool and then written into
+ * the catalog in order. Ordinals follow the order of the shards, then the order within each shard.
+ *
+ * @author Jackson
+ * @see CatalogShard
+ */
+public class ShardedCatalogReader {
+    public static final String SHARD_DIRECTORY = "catalog-shards";
+
+    // Only created when a sharded catalog is first read
+    private static ForkJoinPool pool = null;
+
+    // Shards are read from the assets, or from a directory if there are no assets
+    private final AssetManager assets;
+    private final File directory;
+    private final String[] shards;
+
+    private ShardedCatalogReader(AssetManager assets, File directory, String[] shards) {
+        this.assets = assets;
+        this.directory = directory;
+        this.shards = shards;
+    }
+
+    /**
+     * Lists the shards of the catalog
+     *
+     * @param assets the AssetManager containing the shards
+     * @return a reader over the shards
+     * @throws FileNotFoundException if the catalog was not sharded in this build
+     * @throws IOException           if the shards cannot be listed
+     */
+    public static ShardedCatalogReader open(AssetManager assets) throws IOException {
+        return new ShardedCatalogReader(assets, null, list(assets.list(SHARD_DIRECTORY), SHARD_DIRECTORY));
+    }
+
+    /**
+     * Lists the shards of a catalog in a directory, such as one written by the shardCatalog task
+     *
+     * @param directory the directory containing the shards
+     * @return a reader over the shards
+     * @throws FileNotFoundException if the directory does not contain any shards
+     */
+    static ShardedCatalogReader open(File directory) throws IOException {
+        return new ShardedCatalogReader(null, directory, list(directory.list(), directory.getPath()));
+    }
+
+    private static String[] list(String[] shards, String directory) throws FileNotFoundException {
+        if (shards == null || shards.length == 0) {
+            throw new FileNotFoundException("No catalog shards in " + directory);
+        }
+
+        // Shards are named by index, padded so that they sort in order
+        Arrays.sort(shards);
+        return shards;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     * Reads every shard in parallel, then adds every category and item to the writer
+     *
+     * @param writer the CatalogWriter to populate
+     * @throws IllegalStateException if a shard cannot be read
+     */
+    public void read(CatalogWriter writer) {
+        CatalogShard[] parsed = new CatalogShard[shards.length];
+        getPool().invoke(new ParseTask(parsed, 0, shards.length));
+
+        for (CatalogShard shard : parsed) {
+            shard.writeTo(writer);
+        }
+    }
+
+    private CatalogShard parse(String shard) {
+        CatalogShard result = new CatalogShard();
+        try (Reader reader = new BufferedReader(new InputStreamReader(open(shard), StandardCharsets.UTF_8))) {
+            new DataParser(reader).parse(result);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read catalog shard " + shard, e);
+        }
+        return result;
+    }
+
+    private InputStream open(String shard) throws IOException {
+        if (assets == null) {
+            return new FileInputStream(new File(directory, shard));
+        }
+        return assets.open(SHARD_DIRECTORY + "/" + shard);
+    }
+
+    /**
+     * Parses a range of shards, splitting the range in half until each task holds a single shard
+     */
+    private class ParseTask extends RecursiveAction {
+        private final CatalogShard[] parsed;
+        private final int start;
+        private final int end;
+
+        ParseTask(CatalogShard[] parsed, int start, int end) {
+            this.parsed = parsed;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                parsed[start] = parse(shards[start]);
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new ParseTask(parsed, start, middle), new ParseTask(parsed, middle, end));
+        }
+    }
+}
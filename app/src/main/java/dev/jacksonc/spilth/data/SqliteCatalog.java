@@ -0,0 +1,1072 @@
+package dev.jacksonc.spilth.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A snapshot of the catalog that keeps items in an on-device SQLite database.
+ * <p>
+ * Only categories, the ordinals of the items and their sort ranks are held in memory. Item rows
+ * are read lazily when a field is first needed and kept in a bounded cache, so memory use no
+ * longer grows with the size of the descriptions and image lists. Rows only hold what list screens
+ * show; descriptions are read separately into a much smaller cache.
+ * <p>
+ * The database is populated once from the bundled data and reused on later launches. Patches are
+ * never written to it: each snapshot keeps the items a patch has changed in memory, in front of
+ * the rows they replace, and shares them with the snapshots patched from it. A snapshot therefore
+ * never changes once it has been published, and a reload drops every patch.
+ *
+ * @author Jackson
+ * @see CatalogDatabase
+ * @see MemoryCatalog
+ */
+final class SqliteCatalog extends Catalog {
+    private static final int ROW_CACHE_SIZE = 256;
+    private static final int MEMBER_CACHE_SIZE = 64;
+    private static final int DESCRIPTION_CACHE_SIZE = 32;
+    private static final int[] NONE = new int[0];
+
+    private final SQLiteDatabase database;
+
+    // Categories
+    private final long[] categoryIdsMost;
+    private final long[] categoryIdsLeast;
+    private final String[] names;
+    private final String[] categoryDescriptions;
+    private final String[] categoryImages;
+    private final boolean[] removedCategories;
+    private final OrdinalIndex categoryIndex;
+    private final Category[] categories;
+    private final List<Category> categoryList;
+
+    // Items
+    private final int itemCount;
+    private final long[] itemIdsMost;
+    private final long[] itemIdsLeast;
+    private final OrdinalIndex itemIndex;
+    private final int[] liveItems;
+    private final OrdinalBitmap allItems;
+    private final List<Item> itemList;
+    private final int[] sortedByName;
+    private final int[] sortedByPrice;
+    private final int[] nameRanks;
+    private final int[] priceRanks;
+
+    // Items changed by patches, by ordinal, which are read instead of their rows. Never modified,
+    // as the map is shared with the snapshots patched from this one
+    private final Map<Integer, PatchedItem> patchedItems;
+    private final int[] patchedOrdinals;
+
+    private final LruCache<Integer, Row> rows = new LruCache<Integer, Row>(ROW_CACHE_SIZE) {
+        @Override
+        protected Row create(Integer ordinal) {
+            return readRow(ordinal);
+        }
+    };
+    private final LruCache<Integer, String> descriptions = new LruCache<Integer, String>(DESCRIPTION_CACHE_SIZE) {
+        @Override
+        protected String create(Integer ordinal) {
+            return readDescription(ordinal);
+        }
+    };
+    private final LruCache<Integer, int[]> members = new LruCache<Integer, int[]>(MEMBER_CACHE_SIZE) {
+        @Override
+        protected int[] create(Integer category) {
+            return readMembers(category);
+        }
+    };
+    private final LruCache<Integer, OrdinalBitmap> bitmaps = new LruCache<Integer, OrdinalBitmap>(MEMBER_CACHE_SIZE) {
+        @Override
+        protected OrdinalBitmap create(Integer category) {
+            return OrdinalBitmap.of(getItemOrdinals(category));
+        }
+    };
+
+    private SqliteCatalog(SQLiteDatabase database) {
+        this.database = database;
+
+        int categoryCount = (int) DatabaseUtils.longForQuery(database,
+                "SELECT IFNULL(MAX(ordinal) + 1, 0) FROM categories", null);
+        this.categoryIdsMost = new long[categoryCount];
+        this.categoryIdsLeast = new long[categoryCount];
+        this.names = new String[categoryCount];
+        this.categoryDescriptions = new String[categoryCount];
+        this.categoryImages = new String[categoryCount];
+        this.removedCategories = new boolean[categoryCount];
+        try (Cursor cursor = database.rawQuery(
+                "SELECT ordinal, id, name, description, image FROM categories", null)) {
+            while (cursor.moveToNext()) {
+                int ordinal = cursor.getInt(0);
+                UUID id = UUID.fromString(cursor.getString(1));
+                categoryIdsMost[ordinal] = id.getMostSignificantBits();
+                categoryIdsLeast[ordinal] = id.getLeastSignificantBits();
+                names[ordinal] = cursor.getString(2);
+                categoryDescriptions[ordinal] = cursor.getString(3);
+                categoryImages[ordinal] = cursor.getString(4);
+            }
+        }
+        this.categoryIndex = new OrdinalIndex(categoryIdsMost, categoryIdsLeast, categoryCount);
+        this.categories = new Category[categoryCount];
+        this.categoryList = createCategories();
+
+        this.itemCount = (int) DatabaseUtils.longForQuery(database,
+                "SELECT IFNULL(MAX(ordinal) + 1, 0) FROM items", null);
+        // Ids are kept in memory, so items can be found and compared without reading their rows
+        this.itemIdsMost = new long[itemCount];
+        this.itemIdsLeast = new long[itemCount];
+        // The database holds no removed items, and its ordinals have no gaps
+        int[] liveItems = new int[itemCount];
+        try (Cursor cursor = database.rawQuery("SELECT ordinal, id FROM items", null)) {
+            while (cursor.moveToNext()) {
+                int ordinal = cursor.getInt(0);
+                UUID id = UUID.fromString(cursor.getString(1));
+                itemIdsMost[ordinal] = id.getMostSignificantBits();
+                itemIdsLeast[ordinal] = id.getLeastSignificantBits();
+                liveItems[ordinal] = ordinal;
+            }
+        }
+        this.itemIndex = new OrdinalIndex(itemIdsMost, itemIdsLeast, itemCount);
+        this.liveItems = liveItems;
+        this.allItems = OrdinalBitmap.of(liveItems);
+        this.itemList = new ItemList(liveItems);
+        this.patchedItems = Collections.emptyMap();
+        this.patchedOrdinals = NONE;
+
+        // SQLite compares titles by their bytes, so names were put in order by TitleOrder and
+        // stored as ranks when the database was opened for the current locale
+        this.sortedByName = readOrdinals("SELECT ordinal FROM items ORDER BY name_rank");
+        this.sortedByPrice = readOrdinals("SELECT ordinal FROM items ORDER BY price, ordinal");
+        this.nameRanks = ranks(sortedByName, itemCount);
+        this.priceRanks = ranks(sortedByPrice, itemCount);
+    }
+
+    /**
+     * Builds a new snapshot by applying a patch to an existing one.
+     * <p>
+     * The patched items are added to those the base snapshot has already changed, and the
+     * database is left untouched. Categories are held in memory, so they are simply copied.
+     * Sort orders and the search index are only updated for the items the patch touches; every
+     * other entry is shared with the base snapshot.
+     */
+    private SqliteCatalog(SqliteCatalog base, CatalogPatch patch) {
+        this.database = base.database;
+
+        // Resolve the ordinal of every changed category, giving new categories the next free ordinals
+        int[] changedCategories = new int[patch.categories.size()];
+        int categoryCount = base.categories.length;
+        int change = 0;
+        for (Map.Entry<UUID, CatalogPatch.CategoryChange> entry : patch.categories.entrySet()) {
+            int ordinal = base.categoryIndex.get(entry.getKey());
+            if (ordinal < 0 && !entry.getValue().removed) {
+                ordinal = categoryCount++;
+            }
+            changedCategories[change++] = ordinal;
+        }
+
+        this.categoryIdsMost = Arrays.copyOf(base.categoryIdsMost, categoryCount);
+        this.categoryIdsLeast = Arrays.copyOf(base.categoryIdsLeast, categoryCount);
+        this.names = Arrays.copyOf(base.names, categoryCount);
+        this.categoryDescriptions = Arrays.copyOf(base.categoryDescriptions, categoryCount);
+        this.categoryImages = Arrays.copyOf(base.categoryImages, categoryCount);
+        this.removedCategories = Arrays.copyOf(base.removedCategories, categoryCount);
+
+        // Categories removed by this patch
+        List<Integer> removedFrom = new ArrayList<>();
+
+        change = 0;
+        for (Map.Entry<UUID, CatalogPatch.CategoryChange> entry : patch.categories.entrySet()) {
+            int ordinal = changedCategories[change++];
+            CatalogPatch.CategoryChange category = entry.getValue();
+
+            if (category.removed) {
+                if (ordinal >= 0 && !removedCategories[ordinal]) {
+                    removedCategories[ordinal] = true;
+                    removedFrom.add(ordinal);
+                }
+                continue;
+            }
+
+            if (ordinal >= base.categories.length || removedCategories[ordinal]) {
+                // New (or previously removed) categories take every field from the patch
+                categoryIdsMost[ordinal] = entry.getKey().getMostSignificantBits();
+                categoryIdsLeast[ordinal] = entry.getKey().getLeastSignificantBits();
+                names[ordinal] = category.name;
+                categoryDescriptions[ordinal] = category.description;
+                categoryImages[ordinal] = category.image;
+                removedCategories[ordinal] = false;
+            } else {
+                if (category.name != null) {
+                    names[ordinal] = category.name;
+                }
+                if (category.description != null) {
+                    categoryDescriptions[ordinal] = category.description;
+                }
+                if (category.image != null) {
+                    categoryImages[ordinal] = category.image;
+                }
+            }
+        }
+        this.categoryIndex = categoryCount == base.categories.length ? base.categoryIndex
+                : new OrdinalIndex(base.categoryIndex, categoryIdsMost, categoryIdsLeast,
+                base.categories.length, categoryCount);
+        this.categories = new Category[categoryCount];
+        this.categoryList = createCategories();
+
+        // Resolve the ordinal of every changed item in the same way
+        int[] changedItems = new int[patch.items.size()];
+        int itemCount = base.itemCount;
+        change = 0;
+        for (Map.Entry<UUID, CatalogPatch.ItemChange> entry : patch.items.entrySet()) {
+            int ordinal = base.itemIndex.get(entry.getKey());
+            if (ordinal < 0 && !entry.getValue().removed) {
+                ordinal = itemCount++;
+            }
+            changedItems[change++] = ordinal;
+        }
+
+        this.itemCount = itemCount;
+        this.itemIdsMost = Arrays.copyOf(base.itemIdsMost, itemCount);
+        this.itemIdsLeast = Arrays.copyOf(base.itemIdsLeast, itemCount);
+        boolean[] live = new boolean[itemCount];
+        for (int ordinal : base.liveItems) {
+            live[ordinal] = true;
+        }
+
+        Map<Integer, PatchedItem> patched = new HashMap<>(base.patchedItems);
+        List<Integer> renamed = new ArrayList<>();
+        List<Integer> repriced = new ArrayList<>();
+        // Items whose searchable text changed, including every renamed item
+        List<Integer> retexted = new ArrayList<>();
+
+        // Items leave categories that have been removed
+        for (int category : removedFrom) {
+            for (int item : base.getItemOrdinals(category)) {
+                PatchedItem current = base.readItem(patched, item);
+                patched.put(item, current.withCategories(without(current.categories, category)));
+            }
+        }
+
+        change = 0;
+        for (Map.Entry<UUID, CatalogPatch.ItemChange> entry : patch.items.entrySet()) {
+            int ordinal = changedItems[change++];
+            CatalogPatch.ItemChange item = entry.getValue();
+
+            if (item.removed) {
+                if (ordinal >= 0 && live[ordinal]) {
+                    live[ordinal] = false;
+                    renamed.add(ordinal);
+                    repriced.add(ordinal);
+                }
+            } else if (!live[ordinal]) {
+                // New (or previously removed) items take every field from the patch
+                if (item.title == null || item.price == null) {
+                    throw new IllegalArgumentException("Added item " + entry.getKey() + " must have a title and price");
+                }
+                itemIdsMost[ordinal] = entry.getKey().getMostSignificantBits();
+                itemIdsLeast[ordinal] = entry.getKey().getLeastSignificantBits();
+                patched.put(ordinal, new PatchedItem(item.title, item.description, item.price,
+                        images(item.images), item.categories != null ? resolve(item.categories) : NONE));
+                live[ordinal] = true;
+                renamed.add(ordinal);
+                repriced.add(ordinal);
+            } else {
+                PatchedItem current = base.readItem(patched, ordinal);
+                if (item.title != null && !item.title.equals(current.title)) {
+                    renamed.add(ordinal);
+                }
+                if (item.description != null) {
+                    retexted.add(ordinal);
+                }
+                if (item.price != null && item.price != current.price) {
+                    repriced.add(ordinal);
+                }
+                patched.put(ordinal, new PatchedItem(
+                        item.title != null ? item.title : current.title,
+                        item.description != null ? item.description : current.description,
+                        item.price != null ? item.price : current.price,
+                        item.images != null ? images(item.images) : current.images,
+                        item.categories != null ? resolve(item.categories) : current.categories));
+            }
+        }
+
+        this.itemIndex = itemCount == base.itemCount ? base.itemIndex
+                : new OrdinalIndex(base.itemIndex, itemIdsMost, itemIdsLeast, base.itemCount, itemCount);
+        this.patchedItems = Collections.unmodifiableMap(patched);
+        this.patchedOrdinals = new int[patched.size()];
+        int size = 0;
+        for (int ordinal : patched.keySet()) {
+            patchedOrdinals[size++] = ordinal;
+        }
+        Arrays.sort(patchedOrdinals);
+
+        int[] liveItems = new int[itemCount];
+        int liveCount = 0;
+        for (int ordinal = 0; ordinal < itemCount; ordinal++) {
+            if (live[ordinal]) {
+                liveItems[liveCount++] = ordinal;
+            }
+        }
+        this.liveItems = Arrays.copyOf(liveItems, liveCount);
+        this.allItems = OrdinalBitmap.of(this.liveItems);
+        this.itemList = new ItemList(this.liveItems);
+
+        // Sort orders only re-sort the items whose sort key changed, then merge them back in.
+        // Placing them reads the keys of a few neighbours, rather than every row.
+        this.sortedByName = merge(base.sortedByName, renamed, allItems, TitleOrder.comparator(this));
+        this.sortedByPrice = merge(base.sortedByPrice, repriced, allItems,
+                (a, b) -> Long.compare(getPrice(a), getPrice(b)));
+        this.nameRanks = ranks(sortedByName, itemCount);
+        this.priceRanks = ranks(sortedByPrice, itemCount);
+
+        // Only the terms of changed items are re-indexed, if the base snapshot has been searched
+        SearchEngine baseEngine = base.getBuiltSearchEngine();
+        if (baseEngine != null) {
+            retexted.addAll(renamed);
+            setSearchEngine(SearchEngine.update(baseEngine, this, sorted(retexted)));
+        }
+    }
+
+    /**
+     * Opens the catalog stored in a database, populating it first if it does not hold the current data.
+     *
+     * @param database  the database to read from
+     * @param version   identifies the bundled data, so the database is repopulated when it changes
+     * @param populator writes the bundled data into the database when needed
+     */
+    static SqliteCatalog open(SQLiteDatabase database, String version, Populator populator) throws IOException {
+        String populated = null;
+        try (Cursor cursor = database.rawQuery("SELECT value FROM meta WHERE key = 'version'", null)) {
+            if (cursor.moveToFirst()) {
+                populated = cursor.getString(0);
+            }
+        }
+
+        if (!version.equals(populated)) {
+            database.beginTransaction();
+            try {
+                database.delete("completions", null, null);
+                database.delete("terms", null, null);
+                database.delete("members", null, null);
+                database.delete("images", null, null);
+                database.delete("items", null, null);
+                database.delete("categories", null, null);
+
+                Writer writer = new Writer(database);
+                populator.populate(writer);
+                writer.finish();
+
+                database.execSQL("INSERT OR REPLACE INTO meta (key, value) VALUES ('version', ?)",
+                        new Object[]{version});
+                database.execSQL("DELETE FROM meta WHERE key = 'name_locale'");
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+
+        String locale = Locale.getDefault().toLanguageTag();
+        if (!locale.equals(readMeta(database, "name_locale"))) {
+            storeNameOrder(database, locale);
+        }
+
+        return new SqliteCatalog(database);
+    }
+
+    private static String readMeta(SQLiteDatabase database, String key) {
+        try (Cursor cursor = database.rawQuery("SELECT value FROM meta WHERE key = ?", new String[]{key})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * Stores the rank of every item by name, as ordered for a locale.
+     * <p>
+     * Collating every title is the slowest part of opening a catalog, so it is only done when the
+     * database has been populated or the device's language has changed. An order written with the
+     * bundled data is kept if it already suits the locale, as the binary catalog does.
+     */
+    private static void storeNameOrder(SQLiteDatabase database, String locale) {
+        String[] titles = readTitles(database);
+        int[] stored = readOrdinals(database, "SELECT ordinal FROM items WHERE name_rank IS NOT NULL ORDER BY name_rank");
+        boolean sorted = stored.length == titles.length && TitleOrder.isSorted(stored, titles);
+
+        database.beginTransaction();
+        try {
+            if (!sorted) {
+                // Ties are broken by ordinal, as in MemoryCatalog
+                int[] ordinals = new int[titles.length];
+                for (int i = 0; i < ordinals.length; i++) {
+                    ordinals[i] = i;
+                }
+                writeNameRanks(database, TitleOrder.sort(ordinals, titles));
+            }
+            database.execSQL("INSERT OR REPLACE INTO meta (key, value) VALUES ('name_locale', ?)",
+                    new Object[]{locale});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static void writeNameRanks(SQLiteDatabase database, int[] sorted) {
+        SQLiteStatement update = database.compileStatement("UPDATE items SET name_rank = ? WHERE ordinal = ?");
+        for (int rank = 0; rank < sorted.length; rank++) {
+            update.bindLong(1, rank);
+            update.bindLong(2, sorted[rank]);
+            update.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Creates a view of every category, returning those that have not been removed
+     */
+    private List<Category> createCategories() {
+        List<Category> categoryList = new ArrayList<>(categories.length);
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = new Category(this, i);
+            if (!removedCategories[i]) {
+                categoryList.add(categories[i]);
+            }
+        }
+        return Collections.unmodifiableList(categoryList);
+    }
+
+    /**
+     * Resolves the categories an item lists to their ordinals, in ascending order
+     */
+    private int[] resolve(List<UUID> ids) {
+        int[] ordinals = new int[ids.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = categoryIndex.get(ids.get(i));
+            if (ordinals[i] < 0 || removedCategories[ordinals[i]]) {
+                throw new IllegalStateException("Item lists unknown category " + ids.get(i));
+            }
+        }
+        return distinct(ordinals);
+    }
+
+    private static int[] sorted(List<Integer> ordinals) {
+        int[] array = new int[ordinals.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ordinals.get(i);
+        }
+        return distinct(array);
+    }
+
+    /**
+     * Sorts a list of ordinals in place and removes duplicates
+     */
+    private static int[] distinct(int[] list) {
+        Arrays.sort(list);
+
+        int distinct = 0;
+        for (int j = 0; j < list.length; j++) {
+            if (j == 0 || list[j] != list[j - 1]) {
+                list[distinct++] = list[j];
+            }
+        }
+        return distinct == list.length ? list : Arrays.copyOf(list, distinct);
+    }
+
+    private static int[] without(int[] list, int ordinal) {
+        int index = Arrays.binarySearch(list, ordinal);
+        if (index < 0) {
+            return list;
+        }
+
+        int[] result = new int[list.length - 1];
+        System.arraycopy(list, 0, result, 0, index);
+        System.arraycopy(list, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static List<String> images(List<String> images) {
+        if (images == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(images.toArray(new String[0])));
+    }
+
+    private static int[] ranks(int[] sorted, int size) {
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks[sorted[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    private int[] readOrdinals(String query, Object... args) {
+        return readOrdinals(database, query, args);
+    }
+
+    private static int[] readOrdinals(SQLiteDatabase database, String query, Object... args) {
+        String[] selection = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            selection[i] = String.valueOf(args[i]);
+        }
+
+        try (Cursor cursor = database.rawQuery(query, selection)) {
+            int[] ordinals = new int[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext()) {
+                ordinals[size++] = cursor.getInt(0);
+            }
+            return ordinals;
+        }
+    }
+
+    /**
+     * Reads the title of every item from the database, by ordinal
+     */
+    private static String[] readTitles(SQLiteDatabase database) {
+        String[] titles = new String[(int) DatabaseUtils.longForQuery(database,
+                "SELECT IFNULL(MAX(ordinal) + 1, 0) FROM items", null)];
+        try (Cursor cursor = database.rawQuery("SELECT ordinal, title FROM items", null)) {
+            while (cursor.moveToNext()) {
+                titles[cursor.getInt(0)] = cursor.getString(1);
+            }
+        }
+        return titles;
+    }
+
+    private Row readRow(int ordinal) {
+        PatchedItem patched = patchedItems.get(ordinal);
+        if (patched != null) {
+            return new Row(patched.title, patched.price, patched.images, categoryViews(patched.categories));
+        }
+
+        String title;
+        long price;
+        try (Cursor cursor = database.rawQuery(
+                "SELECT title, price FROM items WHERE ordinal = ?", new String[]{String.valueOf(ordinal)})) {
+            if (!cursor.moveToFirst()) {
+                throw new IllegalStateException("No item with ordinal " + ordinal);
+            }
+            title = cursor.getString(0);
+            price = cursor.getLong(1);
+        }
+        return new Row(title, price, readImages(ordinal), categoryViews(readCategoryOrdinals(ordinal)));
+    }
+
+    private List<String> readImages(int ordinal) {
+        try (Cursor cursor = database.rawQuery(
+                "SELECT path FROM images WHERE item = ? ORDER BY position", new String[]{String.valueOf(ordinal)})) {
+            String[] images = new String[cursor.getCount()];
+            int size = 0;
+            while (cursor.moveToNext()) {
+                images[size++] = cursor.getString(0);
+            }
+            return Collections.unmodifiableList(Arrays.asList(images));
+        }
+    }
+
+    private int[] readCategoryOrdinals(int ordinal) {
+        return readOrdinals("SELECT category FROM members WHERE item = ? ORDER BY category", ordinal);
+    }
+
+    private List<Category> categoryViews(int[] ordinals) {
+        Category[] itemCategories = new Category[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            itemCategories[i] = categories[ordinals[i]];
+        }
+        return Collections.unmodifiableList(Arrays.asList(itemCategories));
+    }
+
+    /**
+     * Reads an item's description, which is left out of its row
+     * <p>
+     * LruCache does not cache null values, so a null description is read again on every call.
+     */
+    private String readDescription(int ordinal) {
+        PatchedItem patched = patchedItems.get(ordinal);
+        if (patched != null) {
+            return patched.description;
+        }
+
+        try (Cursor cursor = database.rawQuery(
+                "SELECT description FROM items WHERE ordinal = ?", new String[]{String.valueOf(ordinal)})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * Reads every field of an item, from the items changed so far or else from its rows
+     *
+     * @param patched the items changed so far, by ordinal
+     */
+    private PatchedItem readItem(Map<Integer, PatchedItem> patched, int ordinal) {
+        PatchedItem item = patched.get(ordinal);
+        if (item != null) {
+            return item;
+        }
+
+        Row row = rows.get(ordinal);
+        return new PatchedItem(row.title, readDescription(ordinal), row.price, row.images,
+                readCategoryOrdinals(ordinal));
+    }
+
+    /**
+     * Reads the items in a category, by ordinal. Items changed by patches list their own
+     * categories, so their rows in the members table are skipped.
+     */
+    private int[] readMembers(int category) {
+        int[] stored = readOrdinals("SELECT item FROM members WHERE category = ? ORDER BY item", category);
+        if (patchedOrdinals.length == 0) {
+            return stored;
+        }
+
+        int[] members = new int[stored.length + patchedOrdinals.length];
+        int size = 0;
+        int i = 0;
+        for (int ordinal : patchedOrdinals) {
+            for (; i < stored.length && stored[i] < ordinal; i++) {
+                if (allItems.contains(stored[i])) {
+                    members[size++] = stored[i];
+                }
+            }
+            if (i < stored.length && stored[i] == ordinal) {
+                i++;
+            }
+            if (allItems.contains(ordinal)
+                    && Arrays.binarySearch(patchedItems.get(ordinal).categories, category) >= 0) {
+                members[size++] = ordinal;
+            }
+        }
+        for (; i < stored.length; i++) {
+            if (allItems.contains(stored[i])) {
+                members[size++] = stored[i];
+            }
+        }
+        return Arrays.copyOf(members, size);
+    }
+
+    /*
+     * Items
+     */
+
+    @Override
+    Item getItem(int ordinal) {
+        return new Item(this, ordinal);
+    }
+
+    @Override
+    Item getItem(UUID id) {
+        int ordinal = itemIndex.get(id);
+        return ordinal < 0 || !allItems.contains(ordinal) ? null : getItem(ordinal);
+    }
+
+    @Override
+    List<Item> getItems() {
+        return itemList;
+    }
+
+    @Override
+    int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Item rows are read from the database unless they are cached
+     */
+    @Override
+    boolean isInStorage() {
+        return true;
+    }
+
+    /**
+     * The index is read from the database, which holds the terms of every stored item. Only the
+     * items patched since it was populated are indexed in memory.
+     */
+    @Override
+    TextIndex buildTextIndex() {
+        return SqliteTextIndex.open(database, this, patchedOrdinals);
+    }
+
+    @Override
+    OrdinalBitmap getAllItems() {
+        return allItems;
+    }
+
+    @Override
+    long getItemIdMost(int ordinal) {
+        return itemIdsMost[ordinal];
+    }
+
+    @Override
+    long getItemIdLeast(int ordinal) {
+        return itemIdsLeast[ordinal];
+    }
+
+    @Override
+    String getTitle(int ordinal) {
+        return rows.get(ordinal).title;
+    }
+
+    @Override
+    String getDescription(int ordinal) {
+        return descriptions.get(ordinal);
+    }
+
+    @Override
+    long getPrice(int ordinal) {
+        return rows.get(ordinal).price;
+    }
+
+    @Override
+    List<String> getImages(int ordinal) {
+        return rows.get(ordinal).images;
+    }
+
+    @Override
+    String getThumbnail(int ordinal) {
+        List<String> images = getImages(ordinal);
+        return images.isEmpty() ? null : images.get(0);
+    }
+
+    @Override
+    int getRank(Item.SortOrder order, int ordinal) {
+        if (order == Item.SortOrder.NAME) {
+            return nameRanks[ordinal];
+        } else {
+            return priceRanks[ordinal];
+        }
+    }
+
+    @Override
+    int[] getSortedOrdinals(Item.SortOrder order) {
+        if (order == Item.SortOrder.NAME) {
+            return sortedByName;
+        } else {
+            return sortedByPrice;
+        }
+    }
+
+    @Override
+    List<Category> getCategories(int ordinal) {
+        return rows.get(ordinal).categories;
+    }
+
+    /*
+     * Categories
+     */
+
+    @Override
+    Category getCategory(int ordinal) {
+        return categories[ordinal];
+    }
+
+    @Override
+    Category getCategory(UUID id) {
+        int ordinal = categoryIndex.get(id);
+        return ordinal < 0 || removedCategories[ordinal] ? null : categories[ordinal];
+    }
+
+    @Override
+    List<Category> getCategories() {
+        return categoryList;
+    }
+
+    @Override
+    int getCategoryCount() {
+        return categories.length;
+    }
+
+    @Override
+    long getCategoryIdMost(int ordinal) {
+        return categoryIdsMost[ordinal];
+    }
+
+    @Override
+    long getCategoryIdLeast(int ordinal) {
+        return categoryIdsLeast[ordinal];
+    }
+
+    @Override
+    String getName(int ordinal) {
+        return names[ordinal];
+    }
+
+    @Override
+    String getCategoryDescription(int ordinal) {
+        return categoryDescriptions[ordinal];
+    }
+
+    @Override
+    String getCategoryImage(int ordinal) {
+        return categoryImages[ordinal];
+    }
+
+    @Override
+    List<Item> getItems(int ordinal) {
+        return new ItemList(getItemOrdinals(ordinal));
+    }
+
+    @Override
+    int[] getItemOrdinals(int ordinal) {
+        return members.get(ordinal);
+    }
+
+    @Override
+    OrdinalBitmap getItemBitmap(int ordinal) {
+        return bitmaps.get(ordinal);
+    }
+
+    /*
+     * Updates
+     */
+
+    /**
+     * Returns a new snapshot with a patch applied. This snapshot and the database are left unchanged.
+     */
+    @Override
+    SqliteCatalog apply(CatalogPatch patch) {
+        return new SqliteCatalog(this, patch);
+    }
+
+    /**
+     * Writes the bundled data into a database
+     */
+    interface Populator {
+        void populate(CatalogWriter writer) throws IOException;
+    }
+
+    /**
+     * The fields of an item, read together from the database
+     */
+    private static final class Row {
+        final String title;
+        final long price;
+        final List<String> images;
+        final List<Category> categories;
+
+        Row(String title, long price, List<String> images, List<Category> categories) {
+            this.title = title;
+            this.price = price;
+            this.images = images;
+            this.categories = categories;
+        }
+    }
+
+    /**
+     * Every field of an item changed by a patch, kept in memory in place of its rows
+     */
+    private static final class PatchedItem {
+        final String title;
+        final String description;
+        final long price;
+        final List<String> images;
+        // Category ordinals, in ascending order
+        final int[] categories;
+
+        PatchedItem(String title, String description, long price, List<String> images, int[] categories) {
+            this.title = title;
+            this.description = description;
+            this.price = price;
+            this.images = images;
+            this.categories = categories;
+        }
+
+        PatchedItem withCategories(int[] categories) {
+            return new PatchedItem(title, description, price, images, categories);
+        }
+    }
+
+    /**
+     * An immutable list of items, which only creates each item as it is read
+     */
+    private final class ItemList extends AbstractList<Item> {
+        private final int[] ordinals;
+
+        ItemList(int[] ordinals) {
+            this.ordinals = ordinals;
+        }
+
+        @Override
+        public Item get(int index) {
+            return getItem(ordinals[index]);
+        }
+
+        @Override
+        public int size() {
+            return ordinals.length;
+        }
+    }
+
+    /**
+     * Writes a catalog into an empty database as it is read from a data source.
+     * <p>
+     * Must be used inside a transaction. The text of each item is indexed for search as it is
+     * written. Prices are put in order by the database's price index.
+     * A name order given by the data source is stored as ranks, to be checked against the
+     * device's locale when the catalog is opened.
+     */
+    private static final class Writer implements CatalogWriter {
+        private final SQLiteDatabase database;
+        private final SQLiteStatement insertCategory;
+        private final SQLiteStatement insertItem;
+        private final SQLiteStatement insertImage;
+        private final SQLiteStatement insertMember;
+        private final SQLiteStatement insertPendingMember;
+        private final SQLiteStatement insertTerm;
+        private final SQLiteStatement insertCompletion;
+
+        private int categoryCount = 0;
+        private int itemCount = 0;
+        private long titleLength = 0;
+        private long descriptionLength = 0;
+        private int[] sortedByName = null;
+
+        Writer(SQLiteDatabase database) {
+            this.database = database;
+
+            // Categories listed by id are resolved once every category has been added
+            database.execSQL("CREATE TEMP TABLE IF NOT EXISTS pending_members ("
+                    + "item INTEGER NOT NULL, "
+                    + "category_id TEXT NOT NULL)");
+            database.execSQL("DELETE FROM pending_members");
+
+            this.insertCategory = database.compileStatement(
+                    "INSERT INTO categories (ordinal, id, name, description, image) VALUES (?, ?, ?, ?, ?)");
+            this.insertItem = database.compileStatement("INSERT INTO items "
+                    + "(ordinal, id, title, description, price, title_length, description_length) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)");
+            this.insertImage = database.compileStatement(
+                    "INSERT INTO images (item, position, path) VALUES (?, ?, ?)");
+            this.insertMember = database.compileStatement(
+                    "INSERT OR IGNORE INTO members (category, item) VALUES (?, ?)");
+            this.insertPendingMember = database.compileStatement(
+                    "INSERT INTO pending_members (item, category_id) VALUES (?, ?)");
+            this.insertTerm = database.compileStatement(
+                    "INSERT INTO terms (term, item, title_count, description_count) VALUES (?, ?, ?, ?)");
+            this.insertCompletion = database.compileStatement(
+                    "INSERT OR IGNORE INTO completions (text, item) VALUES (?, ?)");
+        }
+
+        @Override
+        public int addCategory(UUID id, String name, String description, String image) {
+            insertCategory.clearBindings();
+            insertCategory.bindLong(1, categoryCount);
+            insertCategory.bindString(2, id.toString());
+            bindNullable(insertCategory, 3, name);
+            bindNullable(insertCategory, 4, description);
+            bindNullable(insertCategory, 5, image);
+            insertCategory.executeInsert();
+            return categoryCount++;
+        }
+
+        @Override
+        public int addItem(UUID id, String title, String description, long price, List<String> images) {
+            insertItem.clearBindings();
+            insertItem.bindLong(1, itemCount);
+            insertItem.bindString(2, id.toString());
+            bindNullable(insertItem, 3, title);
+            bindNullable(insertItem, 4, description);
+            TextIndex.Terms terms = TextIndex.Terms.of(title, description);
+            insertItem.bindLong(5, price);
+            insertItem.bindLong(6, terms.titleLength);
+            insertItem.bindLong(7, terms.descriptionLength);
+            insertItem.executeInsert();
+
+            for (int i = 0; i < terms.terms.length; i++) {
+                insertTerm.bindString(1, terms.terms[i]);
+                insertTerm.bindLong(2, itemCount);
+                insertTerm.bindLong(3, terms.titleCounts[i]);
+                insertTerm.bindLong(4, terms.descriptionCounts[i]);
+                insertTerm.executeInsert();
+            }
+            for (String text : Completions.wordStarts(title)) {
+                insertCompletion.bindString(1, text);
+                insertCompletion.bindLong(2, itemCount);
+                insertCompletion.executeInsert();
+            }
+            titleLength += terms.titleLength;
+            descriptionLength += terms.descriptionLength;
+
+            for (int position = 0; position < images.size(); position++) {
+                insertImage.bindLong(1, itemCount);
+                insertImage.bindLong(2, position);
+                insertImage.bindString(3, images.get(position));
+                insertImage.executeInsert();
+            }
+            return itemCount++;
+        }
+
+        @Override
+        public int addItem(UUID id, String title, ByteBuffer text, int descriptionOffset, int descriptionLength,
+                           long price, List<String> images) {
+            // The database keeps its own copy of every description
+            return addItem(id, title, TextStore.decode(text, descriptionOffset, descriptionLength), price, images);
+        }
+
+        @Override
+        public void addItemToCategory(int item, UUID categoryId) {
+            insertPendingMember.bindLong(1, item);
+            insertPendingMember.bindString(2, categoryId.toString());
+            insertPendingMember.executeInsert();
+        }
+
+        @Override
+        public void addItemToCategory(int item, int category) {
+            insertMember.bindLong(1, category);
+            insertMember.bindLong(2, item);
+            insertMember.executeInsert();
+        }
+
+        @Override
+        public void setSortOrder(Item.SortOrder order, int[] sorted) {
+            if (order == Item.SortOrder.NAME) {
+                sortedByName = sorted;
+            }
+        }
+
+        /**
+         * Resolves memberships that were listed by category id, and stores the name order if the
+         * data source gave one and the lengths of all text
+         *
+         * @throws IllegalStateException if an item lists a category that was never added
+         */
+        void finish() {
+            try (Cursor cursor = database.rawQuery("SELECT category_id FROM pending_members "
+                    + "WHERE category_id NOT IN (SELECT id FROM categories) LIMIT 1", null)) {
+                if (cursor.moveToFirst()) {
+                    throw new IllegalStateException("Item lists unknown category " + cursor.getString(0));
+                }
+            }
+
+            database.execSQL("INSERT OR IGNORE INTO members (category, item) "
+                    + "SELECT categories.ordinal, pending_members.item FROM pending_members "
+                    + "JOIN categories ON categories.id = pending_members.category_id");
+            database.execSQL("DELETE FROM pending_members");
+
+            if (sortedByName != null && sortedByName.length == itemCount) {
+                writeNameRanks(database, sortedByName);
+            }
+
+            database.execSQL("INSERT OR REPLACE INTO meta (key, value) VALUES ('title_length', ?), "
+                    + "('description_length', ?)", new Object[]{titleLength, descriptionLength});
+        }
+
+        private static void bindNullable(SQLiteStatement statement, int index, String value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindString(index, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package dev.jacksonc.spilth.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * An index of item text kept in the catalog database.
+ * <p>
+ * The terms of every item and the word starts of every title are written by SqliteCatalog when
+ * the database is populated, so opening the index reads nothing but two totals. Each query reads
+ * the rows for its terms, and BM25 frequencies are read only for the terms being ranked.
+ * <p>
+ * The database only holds the bundled data, so the rows of items changed by a patch are out of
+ * date. Those items are left out of every stored result, and indexed in memory instead by a
+ * MemoryTextIndex that only holds the patched items.
+ *
+ * @author Jackson
+ * @see CatalogDatabase
+ * @see SqliteCatalog
+ */
+final class SqliteTextIndex extends TextIndex {
+    // Stop looking through completions of duplicate titles after this many rows per completion
+    private static final int MAX_SCANNED_PER_RESULT = 16;
+
+    private final SQLiteDatabase database;
+    private final Catalog catalog;
+
+    // Items whose rows are out of date, because a patch changed, added or removed them
+    private final OrdinalBitmap patched;
+    // The text of the patched items that have not been removed
+    private final MemoryTextIndex overlay;
+    // The total number of terms in the titles and descriptions of rows that are not out of date
+    private final long storedTitleLength;
+    private final long storedDescriptionLength;
+
+    private SqliteTextIndex(SQLiteDatabase database, Catalog catalog, OrdinalBitmap patched, MemoryTextIndex overlay,
+                            long storedTitleLength, long storedDescriptionLength) {
+        this.database = database;
+        this.catalog = catalog;
+        this.patched = patched;
+        this.overlay = overlay;
+        this.storedTitleLength = storedTitleLength;
+        this.storedDescriptionLength = storedDescriptionLength;
+    }
+
+    /**
+     * Opens the index stored in a database
+     *
+     * @param catalog the snapshot to index
+     * @param patched the ordinals of the items the snapshot has changed since it was read from the
+     *                database, in ascending order
+     */
+    static SqliteTextIndex open(SQLiteDatabase database, Catalog catalog, int[] patched) {
+        SqliteTextIndex stored = new SqliteTextIndex(database, catalog, OrdinalBitmap.EMPTY, MemoryTextIndex.EMPTY,
+                readTotal(database, "title_length"), readTotal(database, "description_length"));
+        return patched.length == 0 ? stored : stored.update(catalog, patched);
+    }
+
+    /**
+     * Only the changed items are indexed, in memory; the stored rows are shared.
+     */
+    @Override
+    SqliteTextIndex update(Catalog catalog, int[] changed) {
+        // Rows that are now out of date no longer count towards the average lengths
+        long titleLength = storedTitleLength;
+        long descriptionLength = storedDescriptionLength;
+        for (int ordinal : changed) {
+            if (patched.contains(ordinal)) {
+                continue;
+            }
+            try (Cursor cursor = database.rawQuery("SELECT title_length, description_length FROM items "
+                    + "WHERE ordinal = ?", new String[]{String.valueOf(ordinal)})) {
+                if (cursor.moveToFirst()) {
+                    titleLength -= cursor.getLong(0);
+                    descriptionLength -= cursor.getLong(1);
+                }
+            }
+        }
+
+        return new SqliteTextIndex(database, catalog, patched.or(OrdinalBitmap.of(changed)),
+                overlay.update(catalog, changed), titleLength, descriptionLength);
+    }
+
+    @Override
+    OrdinalBitmap match(List<String> terms, boolean prefix) {
+        if (terms.isEmpty()) {
+            return OrdinalBitmap.EMPTY;
+        }
+
+        List<String> args = new ArrayList<>();
+        String condition = condition(terms, prefix, args);
+        int[] items = new int[64];
+        int size = 0;
+        try (Cursor cursor = database.rawQuery("SELECT item FROM terms WHERE " + condition,
+                args.toArray(new String[0]))) {
+            while (cursor.moveToNext()) {
+                // Give up on a search that has been superseded, checking every few thousand rows
+                if (((size + 1) & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException();
+                }
+                if (size == items.length) {
+                    items = Arrays.copyOf(items, size * 2);
+                }
+                items[size++] = cursor.getInt(0);
+            }
+        }
+
+        // A prefix lists each item once for every term it starts
+        Arrays.sort(items, 0, size);
+        OrdinalBitmap.Builder stored = new OrdinalBitmap.Builder();
+        for (int i = 0; i < size; i++) {
+            if ((i == 0 || items[i] != items[i - 1]) && !patched.contains(items[i])) {
+                stored.add(items[i]);
+            }
+        }
+        return stored.build().or(overlay.match(terms, prefix));
+    }
+
+    @Override
+    boolean contains(String term, boolean prefix) {
+        if (overlay.contains(term, prefix)) {
+            return true;
+        }
+
+        // Rows of patched items may hold terms that no current item has
+        List<String> args = new ArrayList<>();
+        String query = "SELECT item FROM terms WHERE " + condition(Collections.singletonList(term), prefix, args);
+        if (patched.isEmpty()) {
+            query += " LIMIT 1";
+        }
+        try (Cursor cursor = database.rawQuery(query, args.toArray(new String[0]))) {
+            while (cursor.moveToNext()) {
+                if (!patched.contains(cursor.getInt(0))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Intersects the candidates with the items containing the term, as the terms of each candidate
+     * would each have to be read from storage
+     */
+    @Override
+    OrdinalBitmap filter(OrdinalBitmap candidates, String term, boolean prefix) {
+        return candidates.and(match(Collections.singletonList(term), prefix));
+    }
+
+    @Override
+    Counts count(List<String> terms, boolean prefix, OrdinalBitmap within) {
+        Counts counts = new Counts();
+        if (terms.isEmpty()) {
+            return counts;
+        }
+
+        // Merge the counts of the patched items, held in memory, into the rows read in order
+        Counts patchedCounts = overlay.count(terms, prefix, within);
+        int next = 0;
+
+        List<String> args = new ArrayList<>();
+        String condition = condition(terms, prefix, args);
+        int visited = 0;
+        try (Cursor cursor = database.rawQuery("SELECT terms.item, SUM(terms.title_count), "
+                + "SUM(terms.description_count), items.title_length, items.description_length "
+                + "FROM terms JOIN items ON items.ordinal = terms.item WHERE " + condition
+                + " GROUP BY terms.item ORDER BY terms.item", args.toArray(new String[0]))) {
+            while (cursor.moveToNext()) {
+                if ((++visited & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException();
+                }
+
+                int ordinal = cursor.getInt(0);
+                if (!within.contains(ordinal) || patched.contains(ordinal)) {
+                    continue;
+                }
+                for (; next < patchedCounts.size() && patchedCounts.getOrdinal(next) < ordinal; next++) {
+                    addPatched(counts, patchedCounts, next);
+                }
+                counts.add(ordinal, cursor.getInt(1), cursor.getInt(2), cursor.getInt(3), cursor.getInt(4));
+            }
+        }
+        for (; next < patchedCounts.size(); next++) {
+            addPatched(counts, patchedCounts, next);
+        }
+        return counts;
+    }
+
+    private static void addPatched(Counts counts, Counts patchedCounts, int index) {
+        counts.add(patchedCounts.getOrdinal(index), patchedCounts.getTitleCount(index),
+                patchedCounts.getDescriptionCount(index), patchedCounts.getTitleLength(index),
+                patchedCounts.getDescriptionLength(index));
+    }
+
+    @Override
+    long getTitleLength() {
+        return storedTitleLength + overlay.getTitleLength();
+    }
+
+    @Override
+    long getDescriptionLength() {
+        return storedDescriptionLength + overlay.getDescriptionLength();
+    }
+
+    /**
+     * Reads the terms through the index of title terms, so description terms are never visited
+     */
+    @Override
+    void addTitleTerms(Set<String> vocabulary) {
+        try (Cursor cursor = database.rawQuery("SELECT DISTINCT term FROM terms WHERE title_count > 0", null)) {
+            while (cursor.moveToNext()) {
+                vocabulary.add(cursor.getString(0));
+            }
+        }
+        overlay.addTitleTerms(vocabulary);
+    }
+
+    /**
+     * Patched titles are completed first, as they were changed most recently
+     */
+    @Override
+    void complete(String prefix, int limit, List<String> completions) {
+        overlay.complete(prefix, limit, completions);
+        if (completions.size() >= limit) {
+            return;
+        }
+
+        try (Cursor cursor = database.rawQuery("SELECT item FROM completions "
+                        + "WHERE text >= ? AND text < ? ORDER BY text, item LIMIT ?",
+                new String[]{prefix, prefix + Character.MAX_VALUE,
+                        String.valueOf((long) limit * MAX_SCANNED_PER_RESULT)})) {
+            while (cursor.moveToNext() && completions.size() < limit) {
+                int ordinal = cursor.getInt(0);
+                if (patched.contains(ordinal)) {
+                    continue;
+                }
+                String title = catalog.getTitle(ordinal);
+                if (!completions.contains(title)) {
+                    completions.add(title);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a condition matching rows for any of some terms, adding its arguments
+     */
+    private static String condition(List<String> terms, boolean prefix, List<String> args) {
+        StringBuilder condition = new StringBuilder("(");
+        for (String term : terms) {
+            if (condition.length() > 1) {
+                condition.append(" OR ");
+            }
+            if (prefix) {
+                // Every term starting with the prefix sorts before the prefix followed by the largest char
+                condition.append("(term >= ? AND term < ?)");
+                args.add(term);
+                args.add(term + Character.MAX_VALUE);
+            } else {
+                condition.append("term = ?");
+                args.add(term);
+            }
+        }
+        return condition.append(')').toString();
+    }
+
+    private static long readTotal(SQLiteDatabase database, String key) {
+        try (Cursor cursor = database.rawQuery("SELECT value FROM meta WHERE key = ?", new String[]{key})) {
+            return cursor.moveToFirst() ? Long.parseLong(cursor.getString(0)) : 0;
+        }
+    }
+}
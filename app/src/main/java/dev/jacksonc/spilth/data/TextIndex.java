@@ -0,0 +1,283 @@
+package dev.jacksonc.spilth.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The part of a search index that covers the titles and descriptions of items.
+ * <p>
+ * SearchEngine asks it which items contain a term, and how often, and indexes category names
+ * itself. MemoryTextIndex keeps the terms of every item in memory, while SqliteTextIndex reads
+ * them from rows written when the database was populated.
+ *
+ * @author Jackson
+ * @see SearchEngine
+ * @see MemoryTextIndex
+ * @see SqliteTextIndex
+ */
+abstract class TextIndex {
+
+    /**
+     * Returns the items whose text contains any of some terms
+     *
+     * @param prefix whether longer terms starting with the terms also match
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted
+     */
+    abstract OrdinalBitmap match(List<String> terms, boolean prefix);
+
+    /**
+     * Returns whether a term, or a longer term starting with it, is in the text of any item
+     */
+    abstract boolean contains(String term, boolean prefix);
+
+    /**
+     * Returns the candidates whose text contains a term
+     *
+     * @param prefix whether longer terms starting with the term also match
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted
+     */
+    abstract OrdinalBitmap filter(OrdinalBitmap candidates, String term, boolean prefix);
+
+    /**
+     * Returns how often any of some terms appear in the text of each of some items
+     *
+     * @param prefix whether longer terms starting with the terms also count
+     * @param within the items to count in
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted
+     */
+    abstract Counts count(List<String> terms, boolean prefix, OrdinalBitmap within);
+
+    /**
+     * Returns the total number of terms in the titles of every item
+     */
+    abstract long getTitleLength();
+
+    /**
+     * Returns the total number of terms in the descriptions of every item
+     */
+    abstract long getDescriptionLength();
+
+    /**
+     * Adds every term found in an item title, for misspelt terms to be corrected against
+     */
+    abstract void addTitleTerms(Set<String> vocabulary);
+
+    /**
+     * Adds the titles with a word starting with a prefix, skipping any already added
+     *
+     * @param prefix      a query folded by {@link Completions#prefix(String)}
+     * @param limit       the size to fill the completions up to
+     * @param completions the completions found so far
+     */
+    abstract void complete(String prefix, int limit, List<String> completions);
+
+    /**
+     * Returns the index of a patched snapshot, only looking at the items the patch changed
+     *
+     * @param catalog the patched snapshot
+     * @param changed the ordinals of items whose text changed, or that were added or removed, in
+     *                ascending order
+     */
+    abstract TextIndex update(Catalog catalog, int[] changed);
+
+    /**
+     * Returns whether a sorted array holds a term, or a longer term starting with it
+     */
+    static boolean contains(String[] terms, String term, boolean prefix) {
+        int start = lowerBound(terms, term);
+        return (prefix ? prefixEnd(terms, term, start) : exactEnd(terms, term, start)) > start;
+    }
+
+    /**
+     * Returns the index of the first term in a sorted array that is not less than a key
+     */
+    static int lowerBound(String[] terms, String key) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (terms[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    static int exactEnd(String[] terms, String term, int start) {
+        return start < terms.length && terms[start].equals(term) ? start + 1 : start;
+    }
+
+    static int prefixEnd(String[] terms, String prefix, int start) {
+        // Every term starting with the prefix sorts before the prefix followed by the largest char
+        return Math.max(start, lowerBound(terms, prefix + Character.MAX_VALUE));
+    }
+
+    /**
+     * Adds an ordinal to a term's postings
+     *
+     * @return the instance of the term used as the index key, so that equal terms share a string
+     */
+    static String add(Map<String, Postings> index, String term, int ordinal) {
+        Postings postings = index.get(term);
+        if (postings == null) {
+            postings = new Postings(term);
+            index.put(term, postings);
+        }
+        postings.add(ordinal);
+        return postings.term;
+    }
+
+    static String[] sortedTerms(Map<String, Postings> index) {
+        String[] terms = index.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        return terms;
+    }
+
+    /**
+     * The distinct terms of an item's text, with how often each appears in its title and
+     * description
+     */
+    static final class Terms {
+        // Sorted
+        final String[] terms;
+        final int[] titleCounts;
+        final int[] descriptionCounts;
+        // The number of terms in the title and description, counting repeats
+        final int titleLength;
+        final int descriptionLength;
+
+        private Terms(String[] terms, int[] titleCounts, int[] descriptionCounts, int titleLength,
+                      int descriptionLength) {
+            this.terms = terms;
+            this.titleCounts = titleCounts;
+            this.descriptionCounts = descriptionCounts;
+            this.titleLength = titleLength;
+            this.descriptionLength = descriptionLength;
+        }
+
+        /**
+         * Splits an item's title and description into terms, counting each one
+         */
+        static Terms of(String title, String description) {
+            List<String> titleTerms = Tokenizer.tokenize(title);
+            List<String> descriptionTerms = Tokenizer.tokenize(description);
+
+            Map<String, int[]> counts = new HashMap<>();
+            for (String term : titleTerms) {
+                count(counts, term)[0]++;
+            }
+            for (String term : descriptionTerms) {
+                count(counts, term)[1]++;
+            }
+
+            String[] terms = counts.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            int[] titleCounts = new int[terms.length];
+            int[] descriptionCounts = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                int[] count = counts.get(terms[i]);
+                titleCounts[i] = count[0];
+                descriptionCounts[i] = count[1];
+            }
+            return new Terms(terms, titleCounts, descriptionCounts, titleTerms.size(), descriptionTerms.size());
+        }
+
+        private static int[] count(Map<String, int[]> counts, String term) {
+            int[] count = counts.get(term);
+            if (count == null) {
+                count = new int[2];
+                counts.put(term, count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The ordinals containing a term, collected in ascending order while an index is built
+     */
+    static final class Postings {
+        private final String term;
+        private int[] ordinals = new int[2];
+        private int size = 0;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        void add(int ordinal) {
+            // A term may appear several times in the same item
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ordinals, size);
+        }
+    }
+
+    /**
+     * How often some terms appear in the text of each item containing them, with the length of
+     * that text, in ascending order of ordinal
+     */
+    static final class Counts {
+        private int[] ordinals = new int[8];
+        private int[] titleCounts = new int[8];
+        private int[] descriptionCounts = new int[8];
+        private int[] titleLengths = new int[8];
+        private int[] descriptionLengths = new int[8];
+        private int size = 0;
+
+        /**
+         * Adds the counts of an item, which must follow every item added before it
+         */
+        void add(int ordinal, int titleCount, int descriptionCount, int titleLength, int descriptionLength) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                titleCounts = Arrays.copyOf(titleCounts, size * 2);
+                descriptionCounts = Arrays.copyOf(descriptionCounts, size * 2);
+                titleLengths = Arrays.copyOf(titleLengths, size * 2);
+                descriptionLengths = Arrays.copyOf(descriptionLengths, size * 2);
+            }
+            ordinals[size] = ordinal;
+            titleCounts[size] = titleCount;
+            descriptionCounts[size] = descriptionCount;
+            titleLengths[size] = titleLength;
+            descriptionLengths[size] = descriptionLength;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int getOrdinal(int index) {
+            return ordinals[index];
+        }
+
+        int getTitleCount(int index) {
+            return titleCounts[index];
+        }
+
+        int getDescriptionCount(int index) {
+            return descriptionCounts[index];
+        }
+
+        int getTitleLength(int index) {
+            return titleLengths[index];
+        }
+
+        int getDescriptionLength(int index) {
+            return descriptionLengths[index];
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package dev.jacksonc.spilth.data;
+
+import android.util.LruCache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Holds long text, such as item descriptions, as UTF-8 bytes that are only decoded when read.
+ * <p>
+ * Text is stored in segments, which are either the memory mapped catalog itself or blocks of
+ * bytes encoded while loading or patching. Each string is addressed by a reference to its segment
+ * and byte offset, along with its length in bytes. No two non-empty strings in a segment start at
+ * the same offset unless they are the same text, so decoded strings are cached by reference.
+ * <p>
+ * Recently decoded strings are kept in a small cache. Stores made from an existing store with
+ * {@link #with(ByteBuffer)} share its segments and cache, so applying a patch does not throw away
+ * text that has already been decoded.
+ *
+ * @author Jackson
+ * @see MemoryCatalog
+ */
+final class TextStore {
+    /**
+     * The length given to text that is null
+     */
+    static final int NO_TEXT = -1;
+
+    private static final int CACHE_SIZE = 32;
+
+    private final ByteBuffer[] segments;
+    private final LruCache<Long, String> cache;
+
+    TextStore(ByteBuffer... segments) {
+        this(segments, new LruCache<Long, String>(CACHE_SIZE));
+    }
+
+    private TextStore(ByteBuffer[] segments, LruCache<Long, String> cache) {
+        this.segments = segments;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns a reference to text within a segment
+     *
+     * @param segment the index of the segment holding the text
+     * @param offset  the position of the text within the segment
+     */
+    static long ref(int segment, int offset) {
+        return (long) segment << 32 | (offset & 0xFFFFFFFFL);
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns a new store holding every segment of this one, followed by another segment
+     */
+    TextStore with(ByteBuffer segment) {
+        ByteBuffer[] segments = Arrays.copyOf(this.segments, this.segments.length + 1);
+        segments[this.segments.length] = segment;
+        return new TextStore(segments, cache);
+    }
+
+    /**
+     * Returns the text at a reference, decoding it if it is not cached
+     *
+     * @param ref    the reference returned by {@link #ref(int, int)}
+     * @param length the length of the text in bytes, or NO_TEXT
+     */
+    String get(long ref, int length) {
+        if (length == NO_TEXT) {
+            return null;
+        }
+        if (length == 0) {
+            // Empty text shares its offset with whatever follows it, so it must not be cached
+            return "";
+        }
+
+        String text = cache.get(ref);
+        if (text == null) {
+            text = decode(segments[(int) (ref >>> 32)], (int) ref, length);
+            cache.put(ref, text);
+        }
+        return text;
+    }
+
+    /**
+     * Decodes text from a buffer without changing its position
+     *
+     * @param offset the position of the text within the buffer
+     * @param length the length of the text in bytes, or NO_TEXT
+     */
+    static String decode(ByteBuffer buffer, int offset, int length) {
+        if (length == NO_TEXT) {
+            return null;
+        }
+
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(offset + length);
+        bytes.position(offset);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    /**
+     * Encodes strings into a new segment, one after another.
+     */
+    static final class Encoder {
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+        private int count = 0;
+
+        /**
+         * Appends an encoded string to the segment
+         *
+         * @param text the UTF-8 bytes of the string
+         * @return the offset of the string within the segment
+         */
+        int append(byte[] text) {
+            if (size + text.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + text.length));
+            }
+            System.arraycopy(text, 0, bytes, size, text.length);
+
+            int offset = size;
+            size += text.length;
+            count++;
+            return offset;
+        }
+
+        /**
+         * Returns true if no strings have been appended, even empty ones
+         */
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Returns the segment, trimmed to the encoded strings
+         */
+        ByteBuffer finish() {
+            return ByteBuffer.wrap(Arrays.copyOf(bytes, size)).asReadOnlyBuffer();
+        }
+    }
+}
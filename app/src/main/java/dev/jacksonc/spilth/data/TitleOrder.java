@@ -0,0 +1,77 @@
+package dev.jacksonc.spilth.data;
+
+import java.text.CollationKey;
+import java.text.Collator;
+
+/**
+ * Puts items in order by title, the way the user's language orders words.
+ * <p>
+ * Titles are compared with a Collator for the default locale rather than by their UTF-16 code
+ * units, so "apple" sorts before "Banana" and "&eacute;clair" sorts among the other e words. A
+ * Collator is slow to compare two strings with, so a full sort first turns every title into a
+ * collation key, which is then compared byte by byte.
+ *
+ * @author Jackson
+ * @see MemoryCatalog
+ * @see SqliteCatalog
+ */
+final class TitleOrder {
+
+    private TitleOrder() {
+    }
+
+    /**
+     * Sorts ordinals by title, keeping items with equal titles in their current order
+     *
+     * @param ordinals the ordinals to sort
+     * @param titles   the title of every item, by ordinal
+     */
+    static int[] sort(int[] ordinals, String[] titles) {
+        Collator collator = Collator.getInstance();
+        CollationKey[] keys = new CollationKey[titles.length];
+        for (int ordinal : ordinals) {
+            keys[ordinal] = collator.getCollationKey(titles[ordinal]);
+        }
+        return Catalog.sort(ordinals, (a, b) -> keys[a].compareTo(keys[b]));
+    }
+
+    /**
+     * Returns whether a precomputed order is already sorted by title for the default locale.
+     * <p>
+     * Orders written at build time, or by a device set to another language, may not be. Checking
+     * only compares neighbours, which is far cheaper than sorting again.
+     *
+     * @param sorted the ordinals in their precomputed order
+     * @param titles the title of every item, by ordinal
+     */
+    static boolean isSorted(int[] sorted, String[] titles) {
+        Collator collator = Collator.getInstance();
+        for (int i = 1; i < sorted.length; i++) {
+            if (collator.compare(titles[sorted[i - 1]], titles[sorted[i]]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a comparator of ordinals by title, for comparing a few items without making keys
+     *
+     * @param titles the title of every item, by ordinal
+     */
+    static IntComparator comparator(String[] titles) {
+        Collator collator = Collator.getInstance();
+        return (a, b) -> collator.compare(titles[a], titles[b]);
+    }
+
+    /**
+     * Returns a comparator of ordinals by title that reads each title from a catalog, for catalogs
+     * that do not keep every title in memory
+     *
+     * @param catalog the catalog the ordinals belong to
+     */
+    static IntComparator comparator(Catalog catalog) {
+        Collator collator = Collator.getInstance();
+        return (a, b) -> collator.compare(catalog.getTitle(a), catalog.getTitle(b));
+    }
+}
@@ -0,0 +1,101 @@
+package dev.jacksonc.spilth.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text into the terms used by the search index.
+ * <p>
+ * A term is a run of letters and digits, folded so that matching ignores case and accents:
+ * "Caf&eacute;" and "CAFE" both become "cafe". Everything else separates terms, so "PS/2 Mouse"
+ * becomes "ps", "2" and "mouse". Folding never depends on the default locale, so a Turkish device
+ * matches "I" to "i" like every other device does.
+ * <p>
+ * Catalog text is folded once, when the index is built. Queries are folded the same way when they
+ * are searched for.
+ *
+ * @author Jackson
+ * @see SearchEngine
+ */
+final class Tokenizer {
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Returns the terms of some text, in the order they appear
+     *
+     * @param text the text to split, which may be null
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i < folded.length(); ) {
+            int codePoint = folded.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(folded.substring(start, i));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) {
+            terms.add(folded.substring(start));
+        }
+        return terms;
+    }
+
+    /**
+     * Folds the case of some text and strips its accents
+     */
+    static String fold(String text) {
+        // Most catalog text is ASCII, which only needs lower casing
+        boolean ascii = true;
+        boolean lower = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                ascii = false;
+                break;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                lower = false;
+            }
+        }
+        if (ascii) {
+            if (lower) {
+                return text;
+            }
+            char[] chars = text.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                    chars[i] += 'a' - 'A';
+                }
+            }
+            return new String(chars);
+        }
+
+        // Decomposing separates accents from the letters they sit on, so they can be dropped
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ) {
+            int codePoint = decomposed.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            // Upper casing first folds letters with several lower case forms, like the final sigma
+            folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint)));
+        }
+        return folded.toString();
+    }
+}
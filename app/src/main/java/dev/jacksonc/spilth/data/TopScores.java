@@ -0,0 +1,99 @@
+package dev.jacksonc.spilth.data;
+
+/**
+ * Keeps the highest scoring ordinals offered to it, up to a fixed number.
+ * <p>
+ * The kept ordinals are held in a min-heap, so the lowest kept score can be compared against and
+ * replaced in logarithmic time. Selecting the best k of n ordinals costs O(n log k), rather than
+ * the O(n log n) of sorting them all. Equal scores are broken by ordinal, lowest first, so that
+ * rankings are stable.
+ *
+ * @author Jackson
+ */
+final class TopScores {
+    private final int[] ordinals;
+    private final float[] scores;
+    private int size = 0;
+
+    /**
+     * @param capacity the number of ordinals to keep
+     */
+    TopScores(int capacity) {
+        this.ordinals = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    /**
+     * Keeps an ordinal if its score is among the highest seen so far
+     */
+    void offer(int ordinal, float score) {
+        if (size < ordinals.length) {
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && worse(ordinals[0], scores[0], ordinal, score)) {
+            ordinals[0] = ordinal;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Returns the kept ordinals, highest score first. The heap is emptied.
+     */
+    int[] toArray() {
+        int[] result = new int[size];
+        // Repeatedly move the lowest score to the end of the heap
+        for (int end = size - 1; end >= 0; end--) {
+            result[end] = ordinals[0];
+            swap(0, end);
+            siftDown(0, end);
+        }
+        size = 0;
+        return result;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!worse(ordinals[index], scores[index], ordinals[parent], scores[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && worse(ordinals[child + 1], scores[child + 1], ordinals[child], scores[child])) {
+                child++;
+            }
+            if (!worse(ordinals[child], scores[child], ordinals[index], scores[index])) {
+                return;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int ordinal = ordinals[i];
+        ordinals[i] = ordinals[j];
+        ordinals[j] = ordinal;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    /**
+     * Returns whether the first ordinal ranks below the second
+     */
+    private static boolean worse(int ordinal, float score, int otherOrdinal, float otherScore) {
+        return score < otherScore || (score == otherScore && ordinal > otherOrdinal);
+    }
+}
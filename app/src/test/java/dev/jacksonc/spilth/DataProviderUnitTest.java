@@ -1,24 +1,54 @@
 package dev.jacksonc.spilth;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
+import dev.jacksonc.spilth.data.BinaryCatalogReader;
 import dev.jacksonc.spilth.data.Category;
 import dev.jacksonc.spilth.data.DataProvider;
 import dev.jacksonc.spilth.data.Item;
+import dev.jacksonc.spilth.data.ItemSet;
+import dev.jacksonc.spilth.data.ItemSource;
+import dev.jacksonc.spilth.data.SearchEngine;
+import dev.jacksonc.spilth.data.SearchHistory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Example local unit test, which will execute on the development machine (host).
@@ -29,8 +59,11 @@ import static org.junit.Assert.assertTrue;
 public class DataProviderUnitTest {
 
     @After
-    public final void tearDown() {
-        DataProvider.reset();
+    public final void tearDown() throws Exception {
+        DataProvider.setSource(DataProvider.Source.BINARY);
+        DataProvider.setEngine(DataProvider.Engine.MEMORY);
+        DataProvider.setShardDirectory(null);
+        DataProvider.reset().get();
     }
 
     @Test
@@ -40,6 +73,13 @@ public class DataProviderUnitTest {
         assertSame(DataProvider.getInstance(), data);
     }
 
+    @Test
+    public void testLoadDataProvider() throws Exception {
+        DataProvider data = DataProvider.load().get();
+
+        assertSame(DataProvider.getInstance(), data);
+    }
+
     @Test
     public void testGetItem(){
         Item item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
@@ -90,4 +130,655 @@ public class DataProviderUnitTest {
         assertEquals(expectedItems.size(), items.size());
         assertTrue(itemIds.containsAll(expectedItems));
     }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCategoryItemsAreImmutable() {
+        Category category = Category.get("6fe14db1-3a6f-45d8-b49c-29616534257f");
+
+        assertSame(category.getItems(), category.getItems());
+        category.getItems().clear();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testItemCategoriesAreImmutable() {
+        Item item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+
+        assertSame(item.getCategories(), item.getCategories());
+        item.getCategories().clear();
+    }
+
+    @Test
+    public void testItemsEqualAcrossSnapshots() throws Exception {
+        Item item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        Set<Item> items = new HashSet<>(Item.getAll());
+        for (Item other : Item.getAll()) {
+            assertEquals(other.getId().hashCode(), other.hashCode());
+            assertEquals(other.equals(item), other.getId().equals(item.getId()));
+        }
+
+        // The same id is the same item in a patched snapshot, even though it is a different view
+        DataProvider.applyPatch(new StringReader("{\"items\": {"
+                + "\"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"price\": \"1.00\" }}}")).get();
+        Item patched = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        assertEquals(item, patched);
+        assertEquals(item.hashCode(), patched.hashCode());
+        assertTrue(items.contains(patched));
+        assertEquals(items, new HashSet<>(Item.getAll()));
+    }
+
+    @Test
+    public void testDuplicateIdsAreRejected() throws Exception {
+        File directory = new File(Spilth.getContext().getCacheDir(), "duplicate-shards");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        String item = "\"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": {"
+                + " \"title\": \"Item\", \"price\": \"1.00\", \"images\": [], \"categories\": [] }";
+        for (int shard = 0; shard < 2; shard++) {
+            Files.write(new File(directory, "shard-00" + shard + ".json").toPath(),
+                    ("{\"categories\": {}, \"items\": {" + item + "}}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        DataProvider.setSource(DataProvider.Source.SHARDED);
+        DataProvider.setShardDirectory(directory);
+        try {
+            DataProvider.reset().get();
+            fail("Loaded a catalog with a duplicate item id");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testItemSourcePagesCategory() throws Exception {
+        for (Category category : Category.getAll()) {
+            ItemSource source = ItemSource.of(category);
+
+            List<Item> items = new ArrayList<>();
+            for (int page = 0; page < source.getPageCount(); page++) {
+                items.addAll(source.loadPage(page).get());
+            }
+
+            assertEquals(category.getItems().size(), source.size());
+            assertEquals(category.getItems(), items);
+        }
+    }
+
+    @Test
+    public void testItemSourceLoadsFieldsWithPage() throws Exception {
+        assertFalse(ItemSource.of(Item.getAll()).isInStorage());
+
+        DataProvider.setEngine(DataProvider.Engine.SQLITE);
+        DataProvider.reset().get();
+        ItemSource source = ItemSource.of(Item.getAll());
+        assertTrue(source.isInStorage());
+
+        List<String> titles = source.loadPage(1, Item::getTitle).get();
+        assertEquals(source.readPage(1).stream().map(Item::getTitle).collect(Collectors.toList()), titles);
+    }
+
+    @Test
+    public void testApplyPatch() throws Exception {
+        String patch = "{"
+                + "\"items\": {"
+                + "  \"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"price\": \"1.00\" },"
+                + "  \"bd7b544a-6d88-42ce-8576-9eeabde80c53\": null,"
+                + "  \"00000000-0000-0000-0000-000000000001\": {"
+                + "    \"title\": \"Patched Item\", \"price\": \"2.50\", \"images\": [],"
+                + "    \"categories\": [\"6fe14db1-3a6f-45d8-b49c-29616534257f\"]"
+                + "  }"
+                + "}}";
+        int itemCount = Item.getAll().size();
+
+        DataProvider.applyPatch(new StringReader(patch)).get();
+
+        assertEquals(new BigDecimal("1.00"), Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8").getPrice());
+        assertNull(Item.get("bd7b544a-6d88-42ce-8576-9eeabde80c53"));
+        assertEquals(itemCount, Item.getAll().size());
+
+        Item added = Item.get("00000000-0000-0000-0000-000000000001");
+        Category category = Category.get("6fe14db1-3a6f-45d8-b49c-29616534257f");
+        assertEquals("Patched Item", added.getTitle());
+        assertEquals(Collections.singletonList(category), added.getCategories());
+        assertTrue(category.getItems().contains(added));
+        assertFalse(category.getItems().stream().anyMatch(item ->
+                item.getId().equals(UUID.fromString("bd7b544a-6d88-42ce-8576-9eeabde80c53"))));
+    }
+
+    @Test
+    public void testPatchDescriptions() throws Exception {
+        Map<UUID, String> descriptions = Item.getAll().stream()
+                .collect(Collectors.toMap(Item::getId, Item::getDescription));
+        String patch = "{\"items\": {"
+                + "  \"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"description\": \"Caf\u00e9 \u20ac\" },"
+                + "  \"6c5f19f6-23b2-44d3-87fc-3c9e8b8f6857\": { \"description\": \"\" }"
+                + "}}";
+
+        DataProvider.applyPatch(new StringReader(patch)).get();
+
+        descriptions.put(UUID.fromString("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8"), "Caf\u00e9 \u20ac");
+        descriptions.put(UUID.fromString("6c5f19f6-23b2-44d3-87fc-3c9e8b8f6857"), "");
+        for (Item item : Item.getAll()) {
+            assertEquals(descriptions.get(item.getId()), item.getDescription());
+        }
+    }
+
+    @Test
+    public void testDisplayPrice() {
+        Locale locale = Locale.getDefault();
+        Item item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        try {
+            Locale.setDefault(Locale.US);
+            assertEquals(49, item.getPriceCents());
+            String label = item.getDisplayPrice();
+            assertEquals("$0.49", label);
+
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals("0,49\u00a0$", item.getDisplayPrice());
+
+            // Labels formatted in another locale are kept
+            Locale.setDefault(Locale.US);
+            assertSame(label, item.getDisplayPrice());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testBinaryCatalogMatchesJson() throws Exception {
+        DataProvider.setSource(DataProvider.Source.JSON);
+        DataProvider.reset().get();
+        Collection<Item> jsonItems = Item.getAll();
+        List<BigDecimal> jsonByPrice = Item.getAll().stream()
+                .sorted(Item.comparator(Item.SortOrder.PRICE)).map(Item::getPrice).collect(Collectors.toList());
+
+        // Only a missing asset falls back to the JSON data, which would then be compared with itself
+        assertNotNull(BinaryCatalogReader.open(Spilth.getContext().getAssets()));
+        DataProvider.setSource(DataProvider.Source.BINARY);
+        DataProvider.reset().get();
+        List<BigDecimal> binaryByPrice = Item.getAll().stream()
+                .sorted(Item.comparator(Item.SortOrder.PRICE)).map(Item::getPrice).collect(Collectors.toList());
+
+        assertSameCatalog(jsonItems, Item.getAll());
+        assertEquals(jsonByPrice, binaryByPrice);
+    }
+
+    @Test
+    public void testCachedCatalogMatchesParsed() throws Exception {
+        DataProvider.setSource(DataProvider.Source.JSON);
+        DataProvider.reset().get();
+        Collection<Item> parsedItems = Item.getAll();
+
+        // The first load caches the parsed catalog, which is read back by the next one
+        DataProvider.reset().get();
+
+        assertSameCatalog(parsedItems, Item.getAll());
+        assertEquals(1, new File(Spilth.getContext().getFilesDir(), "catalog-cache").list().length);
+    }
+
+    @Test
+    public void testDamagedCacheIsParsedAgain() throws Exception {
+        DataProvider.setSource(DataProvider.Source.JSON);
+        DataProvider.reset().get();
+        Collection<Item> parsedItems = Item.getAll();
+        DataProvider.reset().get();
+
+        // Point the item records past the end of the file, leaving a header that still looks valid
+        File cached = new File(Spilth.getContext().getFilesDir(), "catalog-cache").listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(cached, "rw")) {
+            file.seek(28);
+            file.writeInt((int) file.length());
+        }
+
+        DataProvider.reset().get();
+        assertSameCatalog(parsedItems, Item.getAll());
+
+        // The damaged cache is written again
+        DataProvider.reset().get();
+        assertSameCatalog(parsedItems, Item.getAll());
+    }
+
+    @Test
+    public void testShardedCatalogMatchesJson() throws Exception {
+        DataProvider.setSource(DataProvider.Source.JSON);
+        DataProvider.reset().get();
+        Collection<Item> jsonItems = Item.getAll();
+
+        // Split the data into shards by id range, as the shardCatalog task does
+        JsonObject data;
+        try (Reader reader = new InputStreamReader(
+                Spilth.getContext().getResources().openRawResource(R.raw.data), StandardCharsets.UTF_8)) {
+            data = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        JsonObject items = data.getAsJsonObject("items");
+        List<String> ids = items.keySet().stream().sorted().collect(Collectors.toList());
+        File directory = new File(Spilth.getContext().getCacheDir(), "catalog-shards");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        int shardCount = 3;
+        for (int shard = 0; shard < shardCount; shard++) {
+            JsonObject shardItems = new JsonObject();
+            for (String id : ids.subList(ids.size() * shard / shardCount, ids.size() * (shard + 1) / shardCount)) {
+                shardItems.add(id, items.get(id));
+            }
+            JsonObject json = new JsonObject();
+            json.add("categories", shard == 0 ? data.get("categories") : new JsonObject());
+            json.add("items", shardItems);
+            Files.write(new File(directory, String.format(Locale.ROOT, "shard-%03d.json", shard)).toPath(),
+                    json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        DataProvider.setSource(DataProvider.Source.SHARDED);
+        DataProvider.setShardDirectory(directory);
+        DataProvider.reset().get();
+
+        // Ordinals follow the shards, which hold the items in order of id unlike the JSON data
+        assertFalse(ids.equals(jsonItems.stream().map(item -> item.getId().toString()).collect(Collectors.toList())));
+        assertEquals(ids, Item.getAll().stream().map(item -> item.getId().toString()).collect(Collectors.toList()));
+        assertSameCatalog(jsonItems, Item.getAll());
+    }
+
+    @Test
+    public void testSqliteCatalogMatchesMemory() throws Exception {
+        DataProvider.setEngine(DataProvider.Engine.MEMORY);
+        DataProvider.reset().get();
+        Collection<Item> memoryItems = Item.getAll();
+        List<UUID> memoryByName = Item.getAll().stream()
+                .sorted(Item.comparator(Item.SortOrder.NAME)).map(Item::getId).collect(Collectors.toList());
+
+        DataProvider.setEngine(DataProvider.Engine.SQLITE);
+        DataProvider.reset().get();
+        List<UUID> sqliteByName = Item.getAll().stream()
+                .sorted(Item.comparator(Item.SortOrder.NAME)).map(Item::getId).collect(Collectors.toList());
+
+        assertSameCatalog(memoryItems, Item.getAll());
+        assertEquals(memoryByName, sqliteByName);
+    }
+
+    @Test
+    public void testSqliteNameOrderFollowsLocale() throws Exception {
+        Locale locale = Locale.getDefault();
+        DataProvider.setEngine(DataProvider.Engine.SQLITE);
+        try {
+            for (Locale collated : Arrays.asList(Locale.US, new Locale("sv", "SE"), Locale.US)) {
+                Locale.setDefault(collated);
+                DataProvider.reset().get();
+
+                List<Item> byName = new ArrayList<>(Item.getAll());
+                byName.sort(Item.comparator(Item.SortOrder.NAME));
+                Collator collator = Collator.getInstance(collated);
+                for (int i = 1; i < byName.size(); i++) {
+                    assertTrue(collator.compare(byName.get(i - 1).getTitle(), byName.get(i).getTitle()) <= 0);
+                }
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testSqlitePatchLeavesSnapshotUnchanged() throws Exception {
+        String patch = "{"
+                + "\"categories\": { \"2f136b89-eb0b-43e2-988b-ed49967e8050\": null },"
+                + "\"items\": {"
+                + "  \"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"price\": \"1.00\", \"images\": [] },"
+                + "  \"bd7b544a-6d88-42ce-8576-9eeabde80c53\": null,"
+                + "  \"00000000-0000-0000-0000-000000000001\": {"
+                + "    \"title\": \"Patched Item\", \"price\": \"2.50\", \"images\": [],"
+                + "    \"categories\": [\"6fe14db1-3a6f-45d8-b49c-29616534257f\"]"
+                + "  }"
+                + "}}";
+        Map<UUID, String> unpatched = describe(Item.getAll());
+
+        DataProvider.setEngine(DataProvider.Engine.SQLITE);
+        DataProvider.reset().get();
+        Collection<Item> items = Item.getAll();
+        DataProvider.applyPatch(new StringReader(patch)).get();
+
+        // Rows are first read after the patch, and still come from the snapshot they belong to
+        assertEquals(unpatched, describe(items));
+        assertEquals(new BigDecimal("1.00"), Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8").getPrice());
+        assertNull(Item.get("bd7b544a-6d88-42ce-8576-9eeabde80c53"));
+        assertNull(Category.get("2f136b89-eb0b-43e2-988b-ed49967e8050"));
+
+        // Patches are dropped by a reload
+        DataProvider.reset().get();
+        assertEquals(unpatched, describe(Item.getAll()));
+    }
+
+    @Test
+    public void testSqlitePatchMatchesMemory() throws Exception {
+        String[] patches = {
+                "{\"items\": {"
+                        + "  \"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"title\": \"Pelican Simulator\" },"
+                        + "  \"bd7b544a-6d88-42ce-8576-9eeabde80c53\": { \"price\": \"0.01\" },"
+                        + "  \"6c5f19f6-23b2-44d3-87fc-3c9e8b8f6857\": { \"description\": \"A pelican\" }"
+                        + "}}",
+                "{"
+                        + "\"categories\": { \"2f136b89-eb0b-43e2-988b-ed49967e8050\": null },"
+                        + "\"items\": {"
+                        + "  \"bd7b544a-6d88-42ce-8576-9eeabde80c53\": null,"
+                        + "  \"00000000-0000-0000-0000-000000000001\": {"
+                        + "    \"title\": \"Aardvark\", \"price\": \"2.50\", \"images\": [],"
+                        + "    \"categories\": [\"6fe14db1-3a6f-45d8-b49c-29616534257f\"]"
+                        + "  }"
+                        + "}}",
+        };
+
+        Map<DataProvider.Engine, List<Object>> results = new HashMap<>();
+        for (DataProvider.Engine engine : DataProvider.Engine.values()) {
+            DataProvider.setEngine(engine);
+            DataProvider.reset().get();
+            // Searching first means the patches update the index rather than build a new one
+            SearchEngine.search("pelican", Collections.emptyList());
+            for (String patch : patches) {
+                DataProvider.applyPatch(new StringReader(patch)).get();
+            }
+
+            List<Object> result = new ArrayList<>();
+            result.add(describe(Item.getAll()));
+            for (Item.SortOrder order : Item.SortOrder.values()) {
+                result.add(Item.getAll().stream().sorted(Item.comparator(order))
+                        .map(Item::getId).collect(Collectors.toList()));
+            }
+            for (Category category : Category.getAll()) {
+                result.add(category.getItems().stream().map(Item::getId).collect(Collectors.toList()));
+            }
+            ItemSet matches = SearchEngine.search("pelican", Collections.emptyList());
+            result.add(StreamSupport.stream(matches.spliterator(), false)
+                    .map(Item::getId).sorted().collect(Collectors.toList()));
+            results.put(engine, result);
+        }
+
+        assertEquals(results.get(DataProvider.Engine.MEMORY), results.get(DataProvider.Engine.SQLITE));
+    }
+
+    @Test
+    public void testSqliteSearchMatchesMemory() throws Exception {
+        String patch = "{\"items\": {"
+                + "  \"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"title\": \"Pelican Simulator\" },"
+                + "  \"bd7b544a-6d88-42ce-8576-9eeabde80c53\": null,"
+                + "  \"6c5f19f6-23b2-44d3-87fc-3c9e8b8f6857\": { \"description\": \"A pelican mouse\" }"
+                + "}}";
+        String[] queries = {"mouse", "the", "pel", "muose", "flapy birdy", "simulator mo", "a"};
+
+        Map<DataProvider.Engine, List<Object>> results = new HashMap<>();
+        for (DataProvider.Engine engine : Arrays.asList(DataProvider.Engine.MEMORY, DataProvider.Engine.SQLITE)) {
+            DataProvider.setEngine(engine);
+            List<Object> result = new ArrayList<>();
+            // The index is either updated by the patch, or built after it
+            for (boolean searchFirst : new boolean[]{true, false}) {
+                DataProvider.reset().get();
+                if (searchFirst) {
+                    result.add(describeSearches(queries));
+                }
+                DataProvider.applyPatch(new StringReader(patch)).get();
+                result.add(describeSearches(queries));
+            }
+            results.put(engine, result);
+        }
+
+        assertEquals(results.get(DataProvider.Engine.MEMORY), results.get(DataProvider.Engine.SQLITE));
+    }
+
+    @Test
+    public void testItemSetMatchesCategoryFilter() {
+        for (Category first : Category.getAll()) {
+            for (Category second : Category.getAll()) {
+                List<Category> filter = Arrays.asList(first, second);
+                List<UUID> expected = Item.getAll().stream()
+                        .filter(item -> item.getCategories().containsAll(filter))
+                        .map(Item::getId).sorted().collect(Collectors.toList());
+
+                ItemSet items = ItemSet.inCategories(filter);
+                List<UUID> actual = StreamSupport.stream(items.spliterator(), false)
+                        .map(Item::getId).sorted().collect(Collectors.toList());
+
+                assertEquals(expected, actual);
+                assertEquals(expected.size(), items.size());
+            }
+        }
+    }
+
+    @Test
+    public void testSearchMatchesTermsAndPrefixes() throws Exception {
+        Item item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        assertTrue(SearchEngine.search("flap birby", Collections.emptyList()).contains(item));
+        assertTrue(SearchEngine.search("PS/2 MOUSE", Collections.emptyList()).contains(item));
+        assertTrue(SearchEngine.search("birby fl", Collections.emptyList()).contains(item));
+        assertFalse(SearchEngine.search("fl birby", Collections.emptyList()).contains(item));
+        assertEquals(Item.getAll().size(), SearchEngine.search("  ", Collections.emptyList()).size());
+
+        // Patched snapshots update the index of the items they change
+        String patch = "{\"items\": {"
+                + "  \"2b41adab-c1f5-4cfd-a001-6ea90e9e52d8\": { \"title\": \"Pelican Simulator\" }"
+                + "}}";
+        DataProvider.applyPatch(new StringReader(patch)).get();
+
+        item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        assertTrue(SearchEngine.search("pelican", Collections.emptyList()).contains(item));
+        assertFalse(SearchEngine.search("flap", Collections.emptyList()).contains(item));
+        assertTrue(SearchEngine.search("cyclone", Collections.emptyList()).contains(item));
+    }
+
+    @Test
+    public void testSearchFoldsCaseAndAccents() {
+        Locale locale = Locale.getDefault();
+        Item item = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertTrue(SearchEngine.search("FLAP BIRBY", Collections.emptyList()).contains(item));
+            assertTrue(SearchEngine.search("fl\u00e0p b\u00cfrby", Collections.emptyList()).contains(item));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testRefineMatchesSearch() {
+        String query = "the game bir";
+        ItemSet previous = SearchEngine.search("", Collections.emptyList());
+        String previousQuery = "";
+        for (int i = 1; i <= query.length(); i++) {
+            String prefix = query.substring(0, i);
+            ItemSet refined = SearchEngine.refine(previous, previousQuery, prefix);
+            ItemSet searched = SearchEngine.search(prefix, Collections.emptyList());
+
+            List<UUID> expected = StreamSupport.stream(searched.spliterator(), false)
+                    .map(Item::getId).collect(Collectors.toList());
+            List<UUID> actual = StreamSupport.stream(refined.spliterator(), false)
+                    .map(Item::getId).collect(Collectors.toList());
+            assertEquals(prefix, expected, actual);
+
+            previous = refined;
+            previousQuery = prefix;
+        }
+
+        // Queries that do not extend the previous one have to be searched for again
+        assertNull(SearchEngine.refine(previous, previousQuery, "the"));
+    }
+
+    @Test
+    public void testRefineWithoutQuery() {
+        // Sorting before anything has been entered searches again with no query
+        ItemSet all = SearchEngine.search(null, Collections.emptyList());
+        assertEquals(Item.getAll().size(), all.size());
+        assertSame(all, SearchEngine.refine(all, null, null));
+        assertSame(all, SearchEngine.refine(all, null, ""));
+        assertEquals(SearchEngine.search("mouse", Collections.emptyList()).size(),
+                SearchEngine.refine(all, null, "mouse").size());
+    }
+
+    @Test
+    public void testRankPutsTitleMatchesFirst() {
+        ItemSet matches = SearchEngine.search("mouse", Collections.emptyList());
+        List<Item> ranked = readAll(SearchEngine.rank(matches, "mouse", 1));
+
+        assertEquals(matches.size(), ranked.size());
+        assertEquals("PS/2 Mouse", ranked.get(0).getTitle());
+        for (Item item : matches) {
+            assertTrue(ranked.contains(item));
+        }
+    }
+
+    @Test
+    public void testRankedItemSourceReverses() {
+        ItemSet matches = SearchEngine.search("", Collections.emptyList());
+        ItemSource ranked = SearchEngine.rank(matches, "the", 5);
+
+        List<Item> expected = readAll(ranked);
+        Collections.reverse(expected);
+        assertEquals(matches.size(), expected.size());
+        assertEquals(expected, readAll(ranked.reversed()));
+    }
+
+    @Test
+    public void testSearchCorrectsTypos() {
+        Item birby = Item.get("2b41adab-c1f5-4cfd-a001-6ea90e9e52d8");
+        Item mouse = Item.get("6c5f19f6-23b2-44d3-87fc-3c9e8b8f6857");
+        assertTrue(SearchEngine.search("flapy birdy", Collections.emptyList()).contains(birby));
+        assertTrue(SearchEngine.search("muose", Collections.emptyList()).contains(mouse));
+
+        // Corrected queries may match items outside the previous results, so they are searched for again
+        ItemSet previous = SearchEngine.search("muo", Collections.emptyList());
+        assertNull(SearchEngine.refine(previous, "muo", "muose"));
+    }
+
+    @Test
+    public void testRankCorrectsTypos() {
+        ItemSet matches = SearchEngine.search("muose", Collections.emptyList());
+        List<Item> ranked = readAll(SearchEngine.rank(matches, "muose", 1));
+
+        assertEquals(matches.size(), ranked.size());
+        assertEquals("PS/2 Mouse", ranked.get(0).getTitle());
+    }
+
+    @Test
+    public void testSearchResultsAreCached() {
+        Category category = Category.getAll().iterator().next();
+        ItemSet results = SearchEngine.search("the", Collections.singletonList(category));
+        assertSame(results, SearchEngine.search(" THE! ", Collections.singletonList(category)));
+        assertFalse(results == SearchEngine.search("the", Collections.emptyList()));
+    }
+
+    @Test
+    public void testReversedItemSource() {
+        List<Item> items = new ArrayList<>(Item.getAll());
+        int pageSize = Math.min(items.size(), ItemSource.PAGE_SIZE);
+
+        List<Item> expected = new ArrayList<>(items.subList(items.size() - pageSize, items.size()));
+        Collections.reverse(expected);
+        assertEquals(expected, ItemSource.of(items).reversed().readPage(0));
+        assertEquals(items.subList(0, pageSize), ItemSource.of(items).reversed().reversed().readPage(0));
+    }
+
+    @Test
+    public void testSortedItemSourceMatchesComparator() {
+        Collator collator = Collator.getInstance();
+        List<Item> byName = new ArrayList<>(Item.getAll());
+        byName.sort(Item.comparator(Item.SortOrder.NAME));
+        for (int i = 1; i < byName.size(); i++) {
+            assertTrue(collator.compare(byName.get(i - 1).getTitle(), byName.get(i).getTitle()) <= 0);
+        }
+
+        // Both small and large sets are read off the precomputed orders
+        for (Category category : Category.getAll()) {
+            ItemSet items = ItemSet.inCategories(Collections.singletonList(category));
+            for (Item.SortOrder order : Item.SortOrder.values()) {
+                List<Item> expected = StreamSupport.stream(items.spliterator(), false)
+                        .sorted(Item.comparator(order)).collect(Collectors.toList());
+                ItemSource sorted = ItemSource.of(items, order);
+
+                List<Item> actual = new ArrayList<>();
+                for (int page = 0; page < sorted.getPageCount(); page++) {
+                    actual.addAll(sorted.readPage(page));
+                }
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testSuggestCompletesWordStarts() {
+        List<String> suggestions = SearchEngine.suggest("mou", 8);
+        assertTrue(suggestions.contains("PS/2 Mouse"));
+        assertTrue(suggestions.contains("Mountain Dew Doritos"));
+
+        // Category names come before item titles
+        assertEquals("Hardware", SearchEngine.suggest("HARD", 8).get(0));
+        assertEquals(Collections.singletonList("VGA Monitor"), SearchEngine.suggest("vga m", 8));
+        assertTrue(SearchEngine.suggest("  ", 8).isEmpty());
+    }
+
+    @Test
+    public void testSearchHistoryCoalescesAndClears() throws Exception {
+        SearchHistory.clear().get();
+        SearchHistory.add("mouse");
+        SearchHistory.add("phone");
+        SearchHistory.add(" mouse ");
+
+        // Queries are suggested before they are written, and after
+        assertEquals(Arrays.asList("mouse", "phone"), SearchHistory.get("", 10));
+        SearchHistory.flush().get();
+        assertEquals(Arrays.asList("mouse", "phone"), SearchHistory.get("", 10));
+        assertEquals(Collections.singletonList("phone"), SearchHistory.get("PH", 10));
+
+        for (int i = 0; i < 150; i++) {
+            SearchHistory.add("query " + i);
+        }
+        SearchHistory.flush().get();
+        List<String> recent = SearchHistory.get("", 200);
+        assertEquals(100, recent.size());
+        assertEquals("query 149", recent.get(0));
+
+        SearchHistory.add("board");
+        ListenableFuture<?> cleared = SearchHistory.clear();
+        assertTrue(SearchHistory.get("", 10).isEmpty());
+        cleared.get();
+        assertTrue(SearchHistory.get("", 10).isEmpty());
+    }
+
+    @Test
+    public void testCountInMatchesFilteredSearch() {
+        ItemSet matches = SearchEngine.search("the", Collections.emptyList());
+        for (Category category : Category.getAll()) {
+            ItemSet filtered = SearchEngine.search("the", Collections.singletonList(category));
+            assertEquals(category.getName(), filtered.size(), matches.countIn(category));
+        }
+    }
+
+    /**
+     * Asserts that two snapshots hold the same items, with the same fields and categories
+     */
+    private static List<Object> describeSearches(String[] queries) {
+        List<Object> result = new ArrayList<>();
+        for (String query : queries) {
+            ItemSet matches = SearchEngine.search(query, Collections.emptyList());
+            result.add(readAll(SearchEngine.rank(matches, query, ItemSource.PAGE_SIZE)).stream()
+                    .map(Item::getId).collect(Collectors.toList()));
+            result.add(SearchEngine.suggest(query, 8));
+
+            ItemSet refined = SearchEngine.refine(SearchEngine.search("", Collections.emptyList()), "", query);
+            if (refined != null) {
+                result.add(StreamSupport.stream(refined.spliterator(), false)
+                        .map(Item::getId).collect(Collectors.toList()));
+            }
+        }
+        return result;
+    }
+
+    private static List<Item> readAll(ItemSource source) {
+        List<Item> items = new ArrayList<>();
+        for (int page = 0; page < source.getPageCount(); page++) {
+            items.addAll(source.readPage(page));
+        }
+        return items;
+    }
+
+    private static void assertSameCatalog(Collection<Item> expected, Collection<Item> actual) {
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private static Map<UUID, String> describe(Collection<Item> items) {
+        return items.stream().collect(Collectors.toMap(Item::getId, item -> item.getTitle() + item.getDescription()
+                + item.getPrice() + item.getImages() + item.getCategories().stream()
+                .map(Category::getId).sorted().collect(Collectors.toList())));
+    }
 }